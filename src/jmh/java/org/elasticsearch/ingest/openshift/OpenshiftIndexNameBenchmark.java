@@ -0,0 +1,83 @@
+/*
+ * Copyright 2021 Lukáš Vlček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.ingest.openshift;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures conversion between write-alias and initial index names.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class OpenshiftIndexNameBenchmark {
+
+    public String writeAlias = "app-some-custom-schema-write";
+    public String initialIndex = "app-some-custom-schema-000001";
+
+    // Default prefixes plus 64 tenant specific ones
+    public OpenshiftDataModelPrefixes manyPrefixes;
+
+    @Setup
+    public void setUp() {
+        List<String> prefixes = new ArrayList<>(OpenshiftDataModelPrefixes.DEFAULT_PREFIXES);
+        for (int i = 0; i < 64; i++) {
+            prefixes.add("tenant" + i + "-");
+        }
+        manyPrefixes = new OpenshiftDataModelPrefixes(prefixes);
+    }
+
+    @Benchmark
+    public String generateInitialIndexName() {
+        return OpenshiftIndicesUtil.generateInitialIndexName(writeAlias);
+    }
+
+    @Benchmark
+    public String generateWriteAliasName() {
+        return OpenshiftIndicesUtil.generateWriteAliasName(initialIndex);
+    }
+
+    @Benchmark
+    public long parseGeneration() {
+        return OpenshiftIndexNaming.DEFAULT.parseGeneration(initialIndex);
+    }
+
+    @Benchmark
+    public boolean hasDataModelPrefix() {
+        return OpenshiftIndicesUtil.hasDataModelPrefix(writeAlias);
+    }
+
+    @Benchmark
+    public boolean hasDataModelPrefixOfManyPrefixes() {
+        return manyPrefixes.matches(writeAlias);
+    }
+}
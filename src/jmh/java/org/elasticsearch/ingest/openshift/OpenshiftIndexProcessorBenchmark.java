@@ -0,0 +1,134 @@
+/*
+ * Copyright 2021 Lukáš Vlček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.ingest.openshift;
+
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.ingest.IngestDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link OpenshiftIndexProcessor#execute(IngestDocument)} for documents sent to a write-alias
+ * that exists (hit), to a write-alias that does not exist yet (miss, with and without the pending index cache)
+ * and to index outside of the data model. Hit and miss are also measured with the per thread resolved alias cache,
+ * which is how documents of a bulk request sent to the same write-alias are processed.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class OpenshiftIndexProcessorBenchmark {
+
+    // Number of data model schemas (write-aliases) known in the cluster
+    @Param({"100", "10000"})
+    public int schemas;
+
+    private OpenshiftIndexProcessor processor;
+    private OpenshiftIndexProcessor cachingProcessor;
+    private OpenshiftIndexProcessor resolvedCacheProcessor;
+
+    private static final OpenshiftResolvedAliasCache NO_RESOLVED_ALIAS_CACHE = new OpenshiftResolvedAliasCache(
+            Settings.builder().put(OpenshiftResolvedAliasCache.ENABLED_SETTING.getKey(), false).build());
+
+    private IngestDocument hit;
+    private IngestDocument miss;
+    private IngestDocument other;
+
+    private String hitAlias;
+    private String missAlias;
+    private String otherIndex;
+
+    @Setup
+    public void setUp() {
+        ClusterState state = SyntheticClusterState.withSchemas(schemas, 1).build();
+        OpenshiftRoutingTable routingTable = new OpenshiftRoutingTable();
+        routingTable.clusterChanged(new ClusterChangedEvent("benchmark", state, ClusterState.EMPTY_STATE));
+        processor = new OpenshiftIndexProcessor("benchmark", routingTable, new OpenshiftStats(), NO_RESOLVED_ALIAS_CACHE);
+        resolvedCacheProcessor = new OpenshiftIndexProcessor("benchmark", routingTable, new OpenshiftStats(),
+                new OpenshiftResolvedAliasCache(Settings.EMPTY));
+
+        OpenshiftRoutingTable cachingRoutingTable = new OpenshiftRoutingTable(new OpenshiftPendingIndexCache(Settings.EMPTY));
+        cachingRoutingTable.clusterChanged(new ClusterChangedEvent("benchmark", state, ClusterState.EMPTY_STATE));
+        cachingProcessor = new OpenshiftIndexProcessor("benchmark", cachingRoutingTable, new OpenshiftStats(),
+                NO_RESOLVED_ALIAS_CACHE);
+
+        hitAlias = SyntheticClusterState.schemaName(schemas / 2) + "-write";
+        missAlias = "app-unknown-write";
+        otherIndex = "logs-foo";
+
+        hit = document(hitAlias);
+        miss = document(missAlias);
+        other = document(otherIndex);
+    }
+
+    private static IngestDocument document(String index) {
+        Map<String, Object> source = new HashMap<>();
+        source.put("message", "Lorem ipsum dolor sit amet.");
+        source.put("kubernetes", new HashMap<>());
+        return new IngestDocument(index, "_doc", "1", null, null, null, null, source);
+    }
+
+    @Benchmark
+    public IngestDocument executeHit() {
+        return processor.execute(hit);
+    }
+
+    @Benchmark
+    public IngestDocument executeMiss() {
+        // The processor rewrites the "_index" on miss, put the write-alias back.
+        miss.getSourceAndMetadata().put("_index", missAlias);
+        return processor.execute(miss);
+    }
+
+    @Benchmark
+    public IngestDocument executeMissWithPendingIndexCache() {
+        miss.getSourceAndMetadata().put("_index", missAlias);
+        return cachingProcessor.execute(miss);
+    }
+
+    @Benchmark
+    public IngestDocument executeHitWithResolvedAliasCache() {
+        return resolvedCacheProcessor.execute(hit);
+    }
+
+    @Benchmark
+    public IngestDocument executeMissWithResolvedAliasCache() {
+        miss.getSourceAndMetadata().put("_index", missAlias);
+        return resolvedCacheProcessor.execute(miss);
+    }
+
+    @Benchmark
+    public IngestDocument executeOutsideOfDataModel() {
+        return processor.execute(other);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2021 Lukáš Vlček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.ingest.openshift;
+
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.AliasOrIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures identification of initial indices that are missing the write-alias. This is what the master node
+ * does when the cluster metadata change. Compares the full scan of the cluster lookup with the routing table.
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class OpenshiftIndicesUtilBenchmark {
+
+    // Total number of indices in the cluster
+    @Param({"1000", "10000", "100000"})
+    public int indices;
+
+    private Map<String, AliasOrIndex> lookup;
+    private OpenshiftRoutingTable routingTable;
+
+    @Setup
+    public void setUp() {
+        // Every schema has three indices, one in hundred initial indices has no write-alias yet
+        ClusterState state = SyntheticClusterState.withSchemas(indices / 3, 3).build();
+        lookup = state.metaData().getAliasAndIndexLookup();
+        routingTable = new OpenshiftRoutingTable();
+        routingTable.clusterChanged(new ClusterChangedEvent("benchmark", state, ClusterState.EMPTY_STATE));
+    }
+
+    @Benchmark
+    public List<String> fullLookupScan() {
+        return OpenshiftIndicesUtil.getInitialIndicesWithoutWriteAlias(lookup);
+    }
+
+    @Benchmark
+    public List<String> routingTable() {
+        return routingTable.getInitialIndicesWithoutWriteAlias();
+    }
+}
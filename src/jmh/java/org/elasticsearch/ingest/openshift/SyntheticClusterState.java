@@ -0,0 +1,68 @@
+/*
+ * Copyright 2021 Lukáš Vlček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.ingest.openshift;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.AliasMetaData;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.common.settings.Settings;
+
+import java.util.Locale;
+
+/**
+ * Builds cluster state with given number of data model schemas for benchmarks.
+ */
+final class SyntheticClusterState {
+
+    private static final Settings INDEX_SETTINGS = Settings.builder()
+            .put(IndexMetaData.SETTING_VERSION_CREATED, Version.CURRENT)
+            .put(IndexMetaData.SETTING_NUMBER_OF_SHARDS, 1)
+            .put(IndexMetaData.SETTING_NUMBER_OF_REPLICAS, 0)
+            .build();
+
+    private static final String[] PREFIXES = {"app-", "infra-", "audit-"};
+
+    private SyntheticClusterState() {}
+
+    static String schemaName(int schema) {
+        return PREFIXES[schema % PREFIXES.length] + "schema" + schema;
+    }
+
+    /**
+     * Every schema gets given number of rolled over indices. The write-alias points to the latest one,
+     * except for every hundredth schema which has only the initial index without any write-alias yet.
+     */
+    static ClusterState.Builder withSchemas(int schemas, int generations) {
+        MetaData.Builder mdBuilder = MetaData.builder();
+        for (int s = 0; s < schemas; s++) {
+            String schema = schemaName(s);
+            boolean missingAlias = s % 100 == 0;
+            int count = missingAlias ? 1 : generations;
+            for (int g = 1; g <= count; g++) {
+                IndexMetaData.Builder imd = IndexMetaData.builder(String.format(Locale.ROOT, "%s-%06d", schema, g))
+                        .settings(INDEX_SETTINGS);
+                if (!missingAlias) {
+                    imd.putAlias(AliasMetaData.builder(schema + "-write").writeIndex(g == count).build());
+                }
+                mdBuilder.put(imd.build(), false);
+            }
+        }
+        return ClusterState.builder(ClusterName.DEFAULT).version(1).metaData(mdBuilder);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2021 Lukáš Vlček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsearch.ingest.openshift;
+
+import org.elasticsearch.common.settings.Setting;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable set of data model name prefixes compiled into a trie.
+ *
+ * Matching walks the trie along the name and stops at the first complete prefix, hence the cost depends
+ * on the length of the matching prefix and not on the number of prefixes. No objects are allocated.
+ */
+public final class OpenshiftDataModelPrefixes {
+
+    static final List<String> DEFAULT_PREFIXES = Collections.unmodifiableList(Arrays.asList("app-", "infra-", "audit-"));
+
+    static final Setting<List<String>> PREFIXES_SETTING = Setting.listSetting(
+            "openshift.ingest.data_model_prefixes", DEFAULT_PREFIXES, OpenshiftDataModelPrefixes::validatePrefix,
+            Setting.Property.NodeScope, Setting.Property.Dynamic);
+
+    static final OpenshiftDataModelPrefixes DEFAULT = new OpenshiftDataModelPrefixes(DEFAULT_PREFIXES);
+
+    private final List<String> prefixes;
+    private final Node root;
+
+    OpenshiftDataModelPrefixes(final List<String> prefixes) {
+        this.prefixes = Collections.unmodifiableList(new ArrayList<>(prefixes));
+        Builder root = new Builder();
+        for (String prefix : prefixes) {
+            Builder node = root;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.children.computeIfAbsent(prefix.charAt(i), c -> new Builder());
+            }
+            node.terminal = true;
+        }
+        this.root = root.build();
+    }
+
+    private static String validatePrefix(final String prefix) {
+        // Empty prefix would make every index part of the data model, including .kibana etc.
+        if (prefix.isEmpty()) {
+            throw new IllegalArgumentException("Data model prefix must not be empty");
+        }
+        return prefix;
+    }
+
+    /**
+     * @param name index or alias name
+     * @return true iff the name starts with any of the prefixes
+     */
+    public boolean matches(final String name) {
+        Node node = root;
+        for (int i = 0; i < name.length(); i++) {
+            node = node.next(name.charAt(i));
+            if (node == null) {
+                return false;
+            }
+            if (node.terminal) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public List<String> getPrefixes() {
+        return prefixes;
+    }
+
+    private static final class Node {
+
+        // Sorted labels of outgoing edges and the nodes they lead to
+        private final char[] labels;
+        private final Node[] children;
+        private final boolean terminal;
+
+        private Node(final char[] labels, final Node[] children, final boolean terminal) {
+            this.labels = labels;
+            this.children = children;
+            this.terminal = terminal;
+        }
+
+        private Node next(final char c) {
+            int i = Arrays.binarySearch(labels, c);
+            return i < 0 ? null : children[i];
+        }
+    }
+
+    private static final class Builder {
+
+        private final Map<Character, Builder> children = new TreeMap<>();
+        private boolean terminal;
+
+        private Node build() {
+            char[] labels = new char[children.size()];
+            Node[] nodes = new Node[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, Builder> child : children.entrySet()) {
+                labels[i] = child.getKey();
+                nodes[i] = child.getValue().build();
+                i++;
+            }
+            return new Node(labels, nodes, terminal);
+        }
+    }
+}
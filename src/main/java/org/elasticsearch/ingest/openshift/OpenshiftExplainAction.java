@@ -0,0 +1,332 @@
+/*
+ * Copyright 2021 Lukáš Vlček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsearch.ingest.openshift;
+
+import org.elasticsearch.action.Action;
+import org.elasticsearch.action.ActionRequestValidationException;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.support.master.MasterNodeReadOperationRequestBuilder;
+import org.elasticsearch.action.support.master.MasterNodeReadRequest;
+import org.elasticsearch.client.ElasticsearchClient;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.xcontent.ToXContentObject;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import static org.elasticsearch.action.ValidateActions.addValidationError;
+
+/**
+ * Explains what {@link OpenshiftIndexProcessor} would do with documents sent to the given write-aliases and where
+ * the {@link OpenshiftWriteAliasReconciler} is with adding the missing ones.
+ *
+ * It runs on the elected master, where the reconciler works, unless the request is local. All write-aliases
+ * are resolved from a single {@link OpenshiftRoutingTable.Snapshot}, nothing is computed from the cluster state.
+ */
+public class OpenshiftExplainAction extends Action<OpenshiftExplainAction.Request, OpenshiftExplainAction.Response,
+        OpenshiftExplainAction.RequestBuilder> {
+
+    public static final OpenshiftExplainAction INSTANCE = new OpenshiftExplainAction();
+    public static final String NAME = "cluster:monitor/openshift/explain";
+
+    private OpenshiftExplainAction() {
+        super(NAME);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public Response newResponse() {
+        return new Response();
+    }
+
+    @Override
+    public RequestBuilder newRequestBuilder(ElasticsearchClient client) {
+        return new RequestBuilder(client);
+    }
+
+    /**
+     * What the processor does with documents sent to the write-alias.
+     */
+    public enum Decision {
+        // Not a data model write-alias
+        SKIP,
+        // The write-alias exists
+        PASS_THROUGH,
+        // The write-alias does not exist yet, documents go to the initial index
+        REDIRECT,
+        // The write-alias name is a concrete index, see the on_write_index processor option
+        WRITE_INDEX
+    }
+
+    public static class Request extends MasterNodeReadRequest<Request> {
+
+        private String[] aliases = Strings.EMPTY_ARRAY;
+
+        public Request() {
+        }
+
+        public Request(String... aliases) {
+            this.aliases = aliases;
+        }
+
+        public String[] aliases() {
+            return aliases;
+        }
+
+        @Override
+        public ActionRequestValidationException validate() {
+            if (aliases == null || aliases.length == 0) {
+                return addValidationError("no write-alias specified", null);
+            }
+            return null;
+        }
+
+        @Override
+        public void readFrom(StreamInput in) throws IOException {
+            super.readFrom(in);
+            aliases = in.readStringArray();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            super.writeTo(out);
+            out.writeStringArray(aliases);
+        }
+    }
+
+    public static class RequestBuilder extends MasterNodeReadOperationRequestBuilder<Request, Response, RequestBuilder> {
+
+        RequestBuilder(ElasticsearchClient client) {
+            super(client, INSTANCE, new Request());
+        }
+    }
+
+    public static class Response extends ActionResponse implements ToXContentObject {
+
+        private DiscoveryNode node;
+        private boolean electedMaster;
+        // Unknown versions are reported as -1
+        private long clusterStateVersion;
+        private long routingGeneration;
+        private long reconciledClusterStateVersion;
+        private List<Explanation> explanations = Collections.emptyList();
+
+        Response() {
+        }
+
+        Response(DiscoveryNode node, boolean electedMaster, long clusterStateVersion, long routingGeneration,
+                 long reconciledClusterStateVersion, List<Explanation> explanations) {
+            this.node = node;
+            this.electedMaster = electedMaster;
+            this.clusterStateVersion = Math.max(-1, clusterStateVersion);
+            this.routingGeneration = routingGeneration;
+            this.reconciledClusterStateVersion = Math.max(-1, reconciledClusterStateVersion);
+            this.explanations = explanations;
+        }
+
+        public DiscoveryNode getNode() {
+            return node;
+        }
+
+        /**
+         * @return true iff the explaining node was the elected master, the reconciler does not run elsewhere
+         */
+        public boolean isElectedMaster() {
+            return electedMaster;
+        }
+
+        public long getClusterStateVersion() {
+            return clusterStateVersion;
+        }
+
+        public long getRoutingGeneration() {
+            return routingGeneration;
+        }
+
+        public long getReconciledClusterStateVersion() {
+            return reconciledClusterStateVersion;
+        }
+
+        public List<Explanation> getExplanations() {
+            return explanations;
+        }
+
+        @Override
+        public void readFrom(StreamInput in) throws IOException {
+            super.readFrom(in);
+            node = new DiscoveryNode(in);
+            electedMaster = in.readBoolean();
+            clusterStateVersion = in.readLong();
+            routingGeneration = in.readVLong();
+            reconciledClusterStateVersion = in.readLong();
+            explanations = in.readList(Explanation::new);
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            super.writeTo(out);
+            node.writeTo(out);
+            out.writeBoolean(electedMaster);
+            out.writeLong(clusterStateVersion);
+            out.writeVLong(routingGeneration);
+            out.writeLong(reconciledClusterStateVersion);
+            out.writeList(explanations);
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.startObject();
+            builder.startObject("node");
+            builder.field("id", node.getId());
+            builder.field("name", node.getName());
+            builder.endObject();
+            builder.field("elected_master", electedMaster);
+            builder.field("cluster_state_version", clusterStateVersion);
+            builder.field("routing_generation", routingGeneration);
+            builder.field("reconciled_cluster_state_version", reconciledClusterStateVersion);
+            builder.startArray("aliases");
+            for (Explanation explanation : explanations) {
+                explanation.toXContent(builder, params);
+            }
+            builder.endArray();
+            return builder.endObject();
+        }
+    }
+
+    /**
+     * Decision for a single write-alias.
+     */
+    public static class Explanation implements Writeable, ToXContentObject {
+
+        private final String alias;
+        private final Decision decision;
+        // Initial index of REDIRECT, write index of PASS_THROUGH (if known), the concrete index of WRITE_INDEX
+        private final String index;
+        // REDIRECT was taken from the pending index cache
+        private final boolean pending;
+
+        // The initial index exists and has no write-alias, only then the reconciler status is known
+        private boolean missingWriteAlias = false;
+        // The existing initial index, with dated naming it can be older than the one documents are redirected to
+        private String initialIndex;
+        private String reconcilerStatus;
+        private int failures;
+
+        Explanation(String alias, Decision decision, String index, boolean pending) {
+            this.alias = alias;
+            this.decision = decision;
+            this.index = index;
+            this.pending = pending;
+        }
+
+        Explanation(StreamInput in) throws IOException {
+            alias = in.readString();
+            decision = in.readEnum(Decision.class);
+            index = in.readOptionalString();
+            pending = in.readBoolean();
+            missingWriteAlias = in.readBoolean();
+            initialIndex = in.readOptionalString();
+            reconcilerStatus = in.readOptionalString();
+            failures = in.readVInt();
+        }
+
+        /**
+         * @param initialIndex the existing initial index without write-alias
+         * @param status status of the initial index, see {@link OpenshiftWriteAliasReconciler#getStatus(String)}
+         * @param failures number of consecutive failed requests
+         */
+        void missingWriteAlias(String initialIndex, OpenshiftWriteAliasReconciler.IndexStatus status, int failures) {
+            this.missingWriteAlias = true;
+            this.initialIndex = initialIndex;
+            this.reconcilerStatus = status.name().toLowerCase(Locale.ROOT);
+            this.failures = failures;
+        }
+
+        public String getAlias() {
+            return alias;
+        }
+
+        public Decision getDecision() {
+            return decision;
+        }
+
+        public String getIndex() {
+            return index;
+        }
+
+        public boolean isPending() {
+            return pending;
+        }
+
+        public boolean isMissingWriteAlias() {
+            return missingWriteAlias;
+        }
+
+        public String getInitialIndex() {
+            return initialIndex;
+        }
+
+        public String getReconcilerStatus() {
+            return reconcilerStatus;
+        }
+
+        public int getFailures() {
+            return failures;
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeString(alias);
+            out.writeEnum(decision);
+            out.writeOptionalString(index);
+            out.writeBoolean(pending);
+            out.writeBoolean(missingWriteAlias);
+            out.writeOptionalString(initialIndex);
+            out.writeOptionalString(reconcilerStatus);
+            out.writeVInt(failures);
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.startObject();
+            builder.field("alias", alias);
+            builder.field("decision", decision.name().toLowerCase(Locale.ROOT));
+            if (index != null) {
+                builder.field("index", index);
+            }
+            if (decision == Decision.REDIRECT) {
+                builder.field("pending", pending);
+                builder.field("missing_write_alias", missingWriteAlias);
+                if (missingWriteAlias) {
+                    builder.startObject("reconciler");
+                    builder.field("index", initialIndex);
+                    builder.field("status", reconcilerStatus);
+                    builder.field("failures", failures);
+                    builder.endObject();
+                }
+            }
+            return builder.endObject();
+        }
+    }
+}
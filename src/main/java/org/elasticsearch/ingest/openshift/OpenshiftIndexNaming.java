@@ -0,0 +1,228 @@
+/*
+ * Copyright 2021 Lukáš Vlček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsearch.ingest.openshift;
+
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Settings;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How names of data model indices are derived from the write-alias and how the generation is parsed back.
+ *
+ * Write-alias {@code <stem>-write} writes to indices named {@code <stem>-<generation>}, where the generation
+ * is a zero padded number ({@link Style#PADDED}, e.g. {@code app-foo-000001}), or {@code <stem>-<yyyy.MM.dd>-<generation>}
+ * ({@link Style#DATED}, e.g. {@code app-foo-2021.03.01-000001}) which is what the {@code <app-foo-{now/d}-000001>}
+ * date math name resolves to. Any generation can be parsed, not only the initial one.
+ *
+ * Names are parsed by walking the chars from the end of the name, no regular expression is involved and
+ * nothing is allocated unless a new name is formatted.
+ */
+public final class OpenshiftIndexNaming {
+
+    public enum Style {
+        PADDED,
+        DATED
+    }
+
+    static final Setting<Style> STYLE_SETTING = new Setting<>(
+            "openshift.ingest.naming.style", Style.PADDED.name(), value -> Style.valueOf(value.toUpperCase(Locale.ROOT)),
+            Setting.Property.NodeScope);
+
+    static final Setting<Integer> PADDING_SETTING = Setting.intSetting(
+            "openshift.ingest.naming.padding", 6, 1, 18, Setting.Property.NodeScope);
+
+    static final OpenshiftIndexNaming DEFAULT = new OpenshiftIndexNaming(Style.PADDED, 6);
+
+    static final String WRITE_ALIAS_SUFFIX = "-write";
+
+    // Generation must fit into long
+    private static final int MAX_DIGITS = 18;
+    // yyyy.MM.dd
+    private static final int DATE_LENGTH = 10;
+    private static final DateTimeFormatter DATE_FORMATTER =
+            DateTimeFormatter.ofPattern("yyyy.MM.dd", Locale.ROOT).withZone(ZoneOffset.UTC);
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private final Style style;
+    private final int padding;
+    // Formatted date of the day new indices were last named for
+    private volatile Day day = new Day(Long.MIN_VALUE, null);
+
+    OpenshiftIndexNaming(final Style style, final int padding) {
+        this.style = style;
+        this.padding = padding;
+    }
+
+    static OpenshiftIndexNaming create(final Settings settings) {
+        Style style = STYLE_SETTING.get(settings);
+        int padding = PADDING_SETTING.get(settings);
+        if (style == DEFAULT.style && padding == DEFAULT.padding) {
+            return DEFAULT;
+        }
+        return new OpenshiftIndexNaming(style, padding);
+    }
+
+    public Style getStyle() {
+        return style;
+    }
+
+    public int getPadding() {
+        return padding;
+    }
+
+    public boolean isWriteAliasName(final String alias) {
+        return alias.endsWith(WRITE_ALIAS_SUFFIX);
+    }
+
+    /**
+     * @param index index name
+     * @return generation of the index, or -1 if the name does not follow the naming
+     */
+    public long parseGeneration(final String index) {
+        int stem = stemLength(index);
+        if (stem < 0) {
+            return -1;
+        }
+        long generation = 0;
+        for (int i = index.lastIndexOf('-') + 1; i < index.length(); i++) {
+            generation = generation * 10 + (index.charAt(i) - '0');
+        }
+        return generation;
+    }
+
+    public boolean isInitialIndex(final String index) {
+        return parseGeneration(index) == 1;
+    }
+
+    /**
+     * @param index index name
+     * @return length of the name without the generation suffix (and its leading dash), or -1 if the name
+     * does not follow the naming
+     */
+    int stemLength(final String index) {
+        int i = index.length() - 1;
+        int digits = 0;
+        while (i >= 0 && isDigit(index.charAt(i))) {
+            i--;
+            digits++;
+        }
+        // Rollover can add digits to the generation, it never removes them
+        if (digits < padding || digits > MAX_DIGITS || i < 0 || index.charAt(i) != '-') {
+            return -1;
+        }
+        if (style == Style.DATED) {
+            i -= DATE_LENGTH + 1;
+            if (i < 0 || index.charAt(i) != '-' || !isDate(index, i + 1)) {
+                return -1;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Does not check the stem, names that do not end with "-write" are returned as they are.
+     *
+     * @param writeAlias name of write-alias
+     * @param nowMillis current time, it is used by {@link Style#DATED} only
+     * @return name of the first index the write-alias writes to
+     */
+    public String initialIndexName(final String writeAlias, final long nowMillis) {
+        if (!isWriteAliasName(writeAlias)) {
+            return writeAlias;
+        }
+        return indexName(writeAlias, writeAlias.length() - WRITE_ALIAS_SUFFIX.length(), 1, nowMillis);
+    }
+
+    /**
+     * @param index name of index of any generation
+     * @param nowMillis current time, it is used by {@link Style#DATED} only
+     * @return name of the index of the next generation, or null if the name does not follow the naming
+     */
+    public String nextIndexName(final String index, final long nowMillis) {
+        int stem = stemLength(index);
+        if (stem < 0) {
+            return null;
+        }
+        return indexName(index, stem, parseGeneration(index) + 1, nowMillis);
+    }
+
+    /**
+     * @param index name of index of any generation
+     * @return name of the write-alias of the index, or the name as it is if it does not follow the naming
+     */
+    public String writeAliasName(final String index) {
+        int stem = stemLength(index);
+        if (stem < 0) {
+            return index;
+        }
+        StringBuilder builder = new StringBuilder(stem + WRITE_ALIAS_SUFFIX.length());
+        return builder.append(index, 0, stem).append(WRITE_ALIAS_SUFFIX).toString();
+    }
+
+    private String indexName(final String name, final int stem, final long generation, final long nowMillis) {
+        StringBuilder builder = new StringBuilder(stem + DATE_LENGTH + padding + 2);
+        builder.append(name, 0, stem).append('-');
+        if (style == Style.DATED) {
+            builder.append(formatDay(nowMillis)).append('-');
+        }
+        String number = Long.toString(generation);
+        for (int i = number.length(); i < padding; i++) {
+            builder.append('0');
+        }
+        return builder.append(number).toString();
+    }
+
+    private String formatDay(final long nowMillis) {
+        Day current = day;
+        if (nowMillis < current.start || nowMillis >= current.start + DAY_MILLIS) {
+            long start = nowMillis - Math.floorMod(nowMillis, DAY_MILLIS);
+            current = new Day(start, DATE_FORMATTER.format(Instant.ofEpochMilli(start)));
+            day = current;
+        }
+        return current.text;
+    }
+
+    private static boolean isDate(final String name, final int from) {
+        for (int i = 0; i < DATE_LENGTH; i++) {
+            char c = name.charAt(from + i);
+            if (i == 4 || i == 7 ? c != '.' : !isDigit(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(final char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static final class Day {
+
+        private final long start;
+        private final String text;
+
+        private Day(final long start, final String text) {
+            this.start = start;
+            this.text = text;
+        }
+    }
+}
@@ -16,88 +16,233 @@
 
 package org.elasticsearch.ingest.openshift;
 
-import org.elasticsearch.cluster.ClusterState;
-import org.elasticsearch.cluster.ClusterStateListener;
-import org.elasticsearch.cluster.metadata.AliasOrIndex;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.ingest.AbstractProcessor;
+import org.elasticsearch.ingest.ConfigurationUtils;
 import org.elasticsearch.ingest.IngestDocument;
-import org.elasticsearch.ingest.IngestService;
 import org.elasticsearch.ingest.Processor;
 import org.elasticsearch.rest.action.admin.indices.AliasesNotFoundException;
 
-import java.util.Collections;
+import java.util.Locale;
 import java.util.Map;
 
-import static org.elasticsearch.ingest.openshift.OpenshiftIndicesUtil.generateInitialIndexName;
-import static org.elasticsearch.ingest.openshift.OpenshiftIndicesUtil.hasDataModelPrefix;
-
 /**
  * Openshift ingestion processor modify the "_index" value of incoming document. The function of this processor
  * is to "redirect" the schema driven document either to a new index or to existing write-alias for existing index.
  *
  * Notice Elasticsearch can instantiate several instances of this plugin per single ES node.
  *
- * Every instance of this plugin keeps its own lookup table of latest indices/aliases.
+ * All instances of this plugin on the node share single {@link OpenshiftRoutingTable} of latest indices/aliases.
+ *
+ * What happens to documents sent to a write-alias name that is actually a concrete index is configured per processor
+ * by the {@code on_write_index} option, see {@link WriteIndexHandling}.
  */
 public final class OpenshiftIndexProcessor extends AbstractProcessor {
 
     public static final String TYPE = "openshift-ingestion-processor";
 
-    // Local cache of known indices and their aliases
-    private Map<String, AliasOrIndex> latestAliasAndIndicesLookup;
-    private long clusterStateVersion = Long.MIN_VALUE;
-
-    OpenshiftIndexProcessor(final String tag, final IngestService ingestService) {
-        super(tag);
+    private static final String INDEX_FIELD = IngestDocument.MetaData.INDEX.getFieldName();
 
-        // Init the internal indices map.
-        this.latestAliasAndIndicesLookup = Collections.emptyMap();
+    static final String ON_WRITE_INDEX_OPTION = "on_write_index";
+    static final String FALLBACK_INDEX_OPTION = "fallback_index";
+    static final String TAG_FIELD_OPTION = "tag_field";
+    static final String DEFAULT_TAG_FIELD = "openshift_write_index";
 
-        // ClusterEventListener is able to listen to changes in ClusterState; by this we listen to changes
-        // in indices and their aliases.
-        ingestService.getClusterService().addListener(csl);
+    /**
+     * What to do with documents sent to a write-alias name that is a concrete index.
+     */
+    enum WriteIndexHandling {
+        // Reject the document, every rejected document costs the exceptions the ingest service wraps the failure into
+        FAIL,
+        // Route the document to the fallback index
+        FALLBACK,
+        // Let the document go to the concrete index, but mark it with the tag field
+        TAG
     }
 
-    private ClusterStateListener csl = event -> {
-        // We are interested only in index and its aliases changes. This is part of Cluster MetaData.
-        if (!event.metaDataChanged()) {
-            return;
-        }
+    // Shared node level cache of known indices and their aliases
+    private final OpenshiftRoutingTable routingTable;
+    private final OpenshiftIndexNaming naming;
+    // Shared node level counters
+    private final OpenshiftStats stats;
+    // Shared per thread cache of recently resolved write-aliases
+    private final OpenshiftResolvedAliasCache resolvedAliasCache;
 
-        ClusterState eventState = event.state();
+    private final WriteIndexHandling writeIndexHandling;
+    // Used only by the respective write index handling
+    private final String fallbackIndex;
+    private final String tagField;
 
-        synchronized (this) {
-            if (eventState.version() > clusterStateVersion) {
-                latestAliasAndIndicesLookup = eventState.metaData().getAliasAndIndexLookup();
-                clusterStateVersion = eventState.version();
-            }
-        }
+    OpenshiftIndexProcessor(final String tag, final OpenshiftRoutingTable routingTable, final OpenshiftStats stats,
+                            final OpenshiftResolvedAliasCache resolvedAliasCache) {
+        this(tag, routingTable, stats, resolvedAliasCache, WriteIndexHandling.FAIL, null, DEFAULT_TAG_FIELD);
+    }
 
-    };
+    OpenshiftIndexProcessor(final String tag, final OpenshiftRoutingTable routingTable, final OpenshiftStats stats,
+                            final OpenshiftResolvedAliasCache resolvedAliasCache, final WriteIndexHandling writeIndexHandling, final String fallbackIndex, final String tagField) {
+        super(tag);
+        this.routingTable = routingTable;
+        this.naming = routingTable.getNaming();
+        this.stats = stats;
+        this.resolvedAliasCache = resolvedAliasCache;
+        this.writeIndexHandling = writeIndexHandling;
+        this.fallbackIndex = fallbackIndex;
+        this.tagField = tagField;
+    }
 
+    /**
+     * This is called for every single document hence it should be kept cheap. Notice that if the write-alias
+     * exists (which is the common case) then no objects are allocated at all.
+     */
     @Override
     public IngestDocument execute(IngestDocument ingestDocument) {
+        long start = System.nanoTime();
+        try {
+            route(ingestDocument);
+        } finally {
+            stats.executeTime.record(System.nanoTime() - start);
+        }
+        return ingestDocument;
+    }
 
-        String aliasName = ingestDocument.getFieldValue("_index", String.class, Boolean.TRUE);
+    private void route(IngestDocument ingestDocument) {
+
+        // Access the metadata field directly, going through getFieldValue() would parse the field path
+        // for every document.
+        Map<String, Object> sourceAndMetadata = ingestDocument.getSourceAndMetadata();
+        Object value = sourceAndMetadata.get(INDEX_FIELD);
 
         // We assume that the forwarder will always send documents to the write-alias.
         // Skip everything that does not seem to be part of data model.
-        if (aliasName != null && hasDataModelPrefix(aliasName) && aliasName.endsWith("-write")) {
-            // If the write-alias is not known yet (does not exist) then
-            // we change the target to be the initial index
-            if (!latestAliasAndIndicesLookup.containsKey(aliasName)) {
-                String index = generateInitialIndexName(aliasName);
-                ingestDocument.setFieldValue("_index", index);
-            } else {
-                // What to do if the write-alias target exists but it is not actually an alias?
-                if (!latestAliasAndIndicesLookup.get(aliasName).isAlias()) {
-                    // This needs to be discussed.
-                    throw new AliasesNotFoundException(aliasName);
+        if (!(value instanceof String)) {
+            stats.documentsSkipped.increment();
+            return;
+        }
+        String aliasName = (String) value;
+        // All decisions for this document are made from the same routing data
+        OpenshiftRoutingTable.Snapshot snapshot = routingTable.snapshot();
+        if (!naming.isWriteAliasName(aliasName) || !snapshot.hasDataModelPrefix(aliasName)) {
+            stats.documentsSkipped.increment();
+            return;
+        }
+
+        // Documents of a bulk request are processed by the same thread and most of them are sent to just
+        // a few write-aliases, it is very likely this one was resolved already.
+        long generation = snapshot.getGeneration();
+        OpenshiftResolvedAliasCache.Entry entry = resolvedAliasCache.entry(aliasName);
+        if (resolvedAliasCache.isResolved(entry, aliasName, generation)) {
+            stats.resolvedCacheHits.increment();
+        } else {
+            resolve(aliasName, snapshot, entry);
+        }
+
+        switch (entry.route) {
+            case REDIRECT:
+                sourceAndMetadata.put(INDEX_FIELD, entry.index);
+                stats.documentsRedirected.increment();
+                break;
+            case NOT_FOUND:
+                handleWriteIndex(aliasName, sourceAndMetadata, entry);
+                break;
+            default:
+                stats.documentsPassedThrough.increment();
+        }
+    }
+
+    /**
+     * The write-alias name is a concrete index, most likely created by a document that was indexed while
+     * the plugin was not installed. Every document sent to it ends up here until the index is removed.
+     * Rejecting a document is not cheap: the cached exception is reused, but the ingest service wraps it into
+     * two new exceptions (with their stack traces) for every document, only {@code fallback} and {@code tag}
+     * avoid that per document cost.
+     */
+    private void handleWriteIndex(final String aliasName, final Map<String, Object> sourceAndMetadata,
+                                  final OpenshiftResolvedAliasCache.Entry entry) {
+        switch (writeIndexHandling) {
+            case FALLBACK:
+                sourceAndMetadata.put(INDEX_FIELD, fallbackIndex);
+                stats.writeIndexFallback.increment();
+                break;
+            case TAG:
+                sourceAndMetadata.put(tagField, Boolean.TRUE);
+                stats.writeIndexTagged.increment();
+                break;
+            default:
+                stats.aliasesNotFound.increment();
+                if (entry.failure == null) {
+                    entry.failure = new AliasesNotFoundException(aliasName);
                 }
-            }
+                throw entry.failure;
         }
+    }
 
-        return ingestDocument;
+    private void resolve(final String aliasName, final OpenshiftRoutingTable.Snapshot snapshot,
+                         final OpenshiftResolvedAliasCache.Entry entry) {
+        long generation = snapshot.getGeneration();
+        // If the write-alias is not known yet (does not exist) then
+        // we change the target to be the initial index, the pending redirect if there is one
+        switch (snapshot.resolve(aliasName)) {
+            case NONE:
+                OpenshiftResolvedAliasCache.update(entry, aliasName, generation, OpenshiftResolvedAliasCache.Route.REDIRECT,
+                        routingTable.getInitialIndex(aliasName));
+                break;
+            case INDEX:
+                OpenshiftResolvedAliasCache.update(entry, aliasName, generation, OpenshiftResolvedAliasCache.Route.NOT_FOUND,
+                        null);
+                break;
+            default:
+                OpenshiftResolvedAliasCache.update(entry, aliasName, generation,
+                        OpenshiftResolvedAliasCache.Route.PASS_THROUGH, null);
+        }
+    }
+
+    /**
+     * Dry run of {@link #execute(IngestDocument)} for a document sent to the write-alias, it follows the same steps
+     * and reads the same node level structures. Nothing is cached, requested or counted. What happens to documents
+     * sent to a write-alias name that is a concrete index depends on the processor, see {@link WriteIndexHandling}.
+     *
+     * @param snapshot routing data all write-aliases of the explain request are resolved from
+     * @param nowMillis current time, used only if a new initial index name is generated
+     */
+    static OpenshiftExplainAction.Explanation explain(final String aliasName, final OpenshiftRoutingTable routingTable,
+                                                     final OpenshiftRoutingTable.Snapshot snapshot, final long nowMillis) {
+        OpenshiftIndexNaming naming = routingTable.getNaming();
+        if (!naming.isWriteAliasName(aliasName) || !snapshot.hasDataModelPrefix(aliasName)) {
+            return new OpenshiftExplainAction.Explanation(aliasName, OpenshiftExplainAction.Decision.SKIP, null, false);
+        }
+        switch (snapshot.resolve(aliasName)) {
+            case NONE:
+                OpenshiftPendingIndexCache pendingIndexCache = routingTable.getPendingIndexCache();
+                String index = pendingIndexCache == null ? null : pendingIndexCache.lookup(aliasName);
+                if (index != null) {
+                    return new OpenshiftExplainAction.Explanation(aliasName, OpenshiftExplainAction.Decision.REDIRECT, index, true);
+                }
+                return new OpenshiftExplainAction.Explanation(aliasName, OpenshiftExplainAction.Decision.REDIRECT,
+                        naming.initialIndexName(aliasName, nowMillis), false);
+            case INDEX:
+                return new OpenshiftExplainAction.Explanation(aliasName, OpenshiftExplainAction.Decision.WRITE_INDEX,
+                        aliasName, false);
+            default:
+                IndexMetaData writeIndex = snapshot.getWriteIndex(aliasName);
+                return new OpenshiftExplainAction.Explanation(aliasName, OpenshiftExplainAction.Decision.PASS_THROUGH,
+                        writeIndex == null ? null : writeIndex.getIndex().getName(), false);
+        }
+    }
+
+    OpenshiftRoutingTable getRoutingTable() {
+        return routingTable;
+    }
+
+    OpenshiftStats getStats() {
+        return stats;
+    }
+
+    OpenshiftResolvedAliasCache getResolvedAliasCache() {
+        return resolvedAliasCache;
+    }
+
+    WriteIndexHandling getWriteIndexHandling() {
+        return writeIndexHandling;
     }
 
     @Override
@@ -107,15 +252,37 @@ public final class OpenshiftIndexProcessor extends AbstractProcessor {
 
     public static final class Factory implements Processor.Factory {
 
-        private final IngestService ingestService;
+        private final OpenshiftRoutingTable routingTable;
+        private final OpenshiftStats stats;
+        private final OpenshiftResolvedAliasCache resolvedAliasCache;
 
-        public Factory(IngestService ingestService) {
-            this.ingestService = ingestService;
+        Factory(OpenshiftRoutingTable routingTable, OpenshiftStats stats, OpenshiftResolvedAliasCache resolvedAliasCache) {
+            this.routingTable = routingTable;
+            this.stats = stats;
+            this.resolvedAliasCache = resolvedAliasCache;
         }
 
         @Override
         public Processor create(Map<String, Processor.Factory> registry, String processorTag, Map<String, Object> config) throws Exception {
-            return new OpenshiftIndexProcessor(processorTag, ingestService);
+            String onWriteIndex = ConfigurationUtils.readStringProperty(TYPE, processorTag, config, ON_WRITE_INDEX_OPTION,
+                    WriteIndexHandling.FAIL.name().toLowerCase(Locale.ROOT));
+            WriteIndexHandling writeIndexHandling;
+            try {
+                writeIndexHandling = WriteIndexHandling.valueOf(onWriteIndex.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw ConfigurationUtils.newConfigurationException(TYPE, processorTag, ON_WRITE_INDEX_OPTION,
+                        "must be one of [fail, fallback, tag] but was [" + onWriteIndex + "]");
+            }
+            String fallbackIndex = ConfigurationUtils.readOptionalStringProperty(TYPE, processorTag, config,
+                    FALLBACK_INDEX_OPTION);
+            if (writeIndexHandling == WriteIndexHandling.FALLBACK && (fallbackIndex == null || fallbackIndex.isEmpty())) {
+                throw ConfigurationUtils.newConfigurationException(TYPE, processorTag, FALLBACK_INDEX_OPTION,
+                        "required property is missing");
+            }
+            String tagField = ConfigurationUtils.readStringProperty(TYPE, processorTag, config, TAG_FIELD_OPTION,
+                    DEFAULT_TAG_FIELD);
+            return new OpenshiftIndexProcessor(processorTag, routingTable, stats, resolvedAliasCache,
+                    writeIndexHandling, fallbackIndex, tagField);
         }
     }
 }
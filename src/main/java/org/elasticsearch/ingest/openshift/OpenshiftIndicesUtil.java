@@ -27,37 +27,63 @@ import java.util.stream.Collectors;
 
 public abstract class OpenshiftIndicesUtil {
 
+    static final String WRITE_ALIAS_SUFFIX = OpenshiftIndexNaming.WRITE_ALIAS_SUFFIX;
+
     /**
-     * Does trim() and replaces "-write" suffix with "-00001".
+     * Does trim() and replaces "-write" suffix with "-000001".
+     * See {@link OpenshiftIndexNaming} for other naming styles.
      * @param aliasName assume write-alias
      * @return initial index name
      */
     public static String generateInitialIndexName(final String aliasName) {
-        return aliasName.trim().replaceAll("-write$", "-000001");
+        return OpenshiftIndexNaming.DEFAULT.initialIndexName(aliasName.trim(), 0);
     }
 
     /**
-     * Does trim() and replaces "-00001" suffix with "-write".
-     * @param index assume initialIndex
+     * Does trim() and replaces the generation suffix (e.g. "-000001") with "-write".
+     * See {@link OpenshiftIndexNaming} for other naming styles.
+     * @param index assume index of any generation
      * @return write-alias
      */
     public static String generateWriteAliasName(final String index) {
-        return index.trim().replaceAll("-000001$", "-write");
+        return OpenshiftIndexNaming.DEFAULT.writeAliasName(index.trim());
     }
 
     public static boolean isInitialIndex(final String index) {
-        return index.endsWith("-000001");
+        return OpenshiftIndexNaming.DEFAULT.isInitialIndex(index);
+    }
+
+    public static boolean isWriteAliasName(final String alias) {
+        return OpenshiftIndexNaming.DEFAULT.isWriteAliasName(alias);
+    }
+
+    /**
+     * @param imd index metadata
+     * @return true iff the index has at least one alias with the write flag
+     */
+    public static boolean hasWriteIndexAlias(final IndexMetaData imd) {
+        for (ObjectCursor<AliasMetaData> md: imd.getAliases().values()) {
+            // Alias metadata can be undefined because the Builder does not require all MetaData to
+            // be specified. See <org.elasticsearch.cluster.metadata.AliasMetaData.Builder>.
+            if (md.value.writeIndex() != null && md.value.writeIndex()) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
      * Use this function to filter out all indices that do not follow the data model naming schema.
      * This is to make sure that we do not mess-up other indices like kibana ...
      *
+     * Only the default prefixes are checked, see {@link OpenshiftRoutingTable#hasDataModelPrefix(String)}
+     * for the prefixes configured on the node.
+     *
      * @param index index name
      * @return true iff the index name follows the data model naming schema
      */
     public static boolean hasDataModelPrefix(final String index) {
-        return index.startsWith("app-") || index.startsWith("infra-") || index.startsWith("audit-");
+        return OpenshiftDataModelPrefixes.DEFAULT.matches(index);
     }
 
     /**
@@ -66,21 +92,24 @@ public abstract class OpenshiftIndicesUtil {
      * @return Names of initial indices that have no write-alias.
      */
     public static List<String> getInitialIndicesWithoutWriteAlias(final Map<String, AliasOrIndex> indices) {
+        return getInitialIndicesWithoutWriteAlias(indices, OpenshiftIndexNaming.DEFAULT);
+    }
+
+    /**
+     * @param indices Map of indices and aliases.
+     * @param naming naming of data model indices
+     * @return Names of initial indices that have no write-alias.
+     */
+    public static List<String> getInitialIndicesWithoutWriteAlias(final Map<String, AliasOrIndex> indices,
+                                                                  final OpenshiftIndexNaming naming) {
         return indices.entrySet().stream()
                 .filter(x -> {
                         if(!x.getValue().isAlias()) {
                             IndexMetaData imd = ((AliasOrIndex.Index)x.getValue()).getIndex();
                             // if ^^ breaks (because of ES version upgrade) then you can use x.getValue().getIndices().get(0)
-                            if (!isInitialIndex(imd.getIndex().getName())) return false;
+                            if (!naming.isInitialIndex(imd.getIndex().getName())) return false;
                             if (!hasDataModelPrefix(imd.getIndex().getName())) return false;
-                            for (ObjectCursor<AliasMetaData> md: imd.getAliases().values()) {
-                                // Alias metadata can be undefined because the Builder does not require all MetaData to
-                                // be specified. See <org.elasticsearch.cluster.metadata.AliasMetaData.Builder>.
-                                if (md.value.writeIndex() != null && md.value.writeIndex()) {
-                                    return false;
-                                }
-                            }
-                            return true;
+                            return !hasWriteIndexAlias(imd);
                         }
                         return false;
                         })
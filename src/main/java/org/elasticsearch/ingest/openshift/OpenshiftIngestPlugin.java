@@ -16,57 +16,69 @@
 
 package org.elasticsearch.ingest.openshift;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
-import org.elasticsearch.action.ActionListener;
-import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
-import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest.AliasActions;
-import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequestBuilder;
-import org.elasticsearch.action.support.master.AcknowledgedResponse;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionResponse;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.cluster.ClusterChangedEvent;
-import org.elasticsearch.cluster.ClusterState;
 import org.elasticsearch.cluster.ClusterStateListener;
-import org.elasticsearch.cluster.metadata.AliasOrIndex;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.io.stream.NamedWriteableRegistry;
+import org.elasticsearch.common.settings.ClusterSettings;
+import org.elasticsearch.common.settings.IndexScopedSettings;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.settings.SettingsFilter;
 import org.elasticsearch.common.xcontent.NamedXContentRegistry;
 import org.elasticsearch.env.Environment;
 import org.elasticsearch.env.NodeEnvironment;
 import org.elasticsearch.ingest.Processor;
+import org.elasticsearch.plugins.ActionPlugin;
 import org.elasticsearch.plugins.ClusterPlugin;
 import org.elasticsearch.plugins.IngestPlugin;
 import org.elasticsearch.plugins.Plugin;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestHandler;
 import org.elasticsearch.script.ScriptService;
+import org.elasticsearch.threadpool.ExecutorBuilder;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.watcher.ResourceWatcherService;
 
-import static org.elasticsearch.ingest.openshift.OpenshiftIndicesUtil.getInitialIndicesWithoutWriteAlias;
-import static org.elasticsearch.ingest.openshift.OpenshiftIndicesUtil.generateWriteAliasName;
-
 /**
  * The purpose of this plugin is to investigate changes in indices and aliases (taken from cluster meta data updates)
  * and identify schema indices that are missing the write-alias flag. If there are such indices it creates the
  * Index Aliases request to handle it.
  * See: https://www.elastic.co/guide/en/elasticsearch/reference/6.8/indices-aliases.html
  */
-public class OpenshiftIngestPlugin extends Plugin implements IngestPlugin, ClusterPlugin {
-
-    private static final Logger logger = LogManager.getLogger(OpenshiftIngestPlugin.class);
-
-    // Local cache of known indices and their aliases
-    private Map<String, AliasOrIndex> latestAliasAndIndicesLookup;
-    private long clusterStateVersion = Long.MIN_VALUE;
+public class OpenshiftIngestPlugin extends Plugin implements IngestPlugin, ClusterPlugin, ActionPlugin {
+
+    // Node level routing table shared by all processor instances.
+    // Processor factories are obtained before node components are created, hence the table is created eagerly
+    // and registered as a cluster state listener later in createComponents.
+    private final OpenshiftRoutingTable routingTable;
+    // Node level counters, shared by all processor instances and the reconciler.
+    private final OpenshiftStats stats = new OpenshiftStats();
+    private final OpenshiftResolvedAliasCache resolvedAliasCache;
+
+    public OpenshiftIngestPlugin(final Settings settings) {
+        OpenshiftIndexNaming naming = OpenshiftIndexNaming.create(settings);
+        this.routingTable = new OpenshiftRoutingTable(OpenshiftPendingIndexCache.create(settings, naming), naming);
+        this.resolvedAliasCache = new OpenshiftResolvedAliasCache(settings);
+        this.routingTable.setDataModelPrefixes(OpenshiftDataModelPrefixes.PREFIXES_SETTING.get(settings));
+    }
 
     @Override
     public Map<String, Processor.Factory> getProcessors(Processor.Parameters parameters) {
         return Collections.singletonMap(OpenshiftIndexProcessor.TYPE, new OpenshiftIndexProcessor.Factory(
-                parameters.ingestService
+                routingTable, stats, resolvedAliasCache
         ));
     }
 
@@ -75,85 +87,106 @@ public class OpenshiftIngestPlugin extends Plugin implements IngestPlugin, Clust
                                                ResourceWatcherService resourceWatcherService, ScriptService scriptService,
                                                NamedXContentRegistry xContentRegistry, Environment environment,
                                                NodeEnvironment nodeEnvironment, NamedWriteableRegistry namedWriteableRegistry) {
+        // Listeners are notified in the order they were added, hence the routing table
+        // is always up to date when the IndicesUpdatedListener is notified.
+        clusterService.addListener(routingTable);
+        clusterService.getClusterSettings().addSettingsUpdateConsumer(OpenshiftDataModelPrefixes.PREFIXES_SETTING,
+                routingTable::setDataModelPrefixes);
+        OpenshiftWriteAliasReconciler reconciler = new OpenshiftWriteAliasReconciler(clusterService.getSettings(),
+                routingTable, stats, client, threadPool, threadPool::relativeTimeInMillis,
+                clusterService.getMasterService()::numberOfPendingTasks);
+        clusterService.addListener(new IndicesUpdatedListener(reconciler));
+        clusterService.addLocalNodeMasterListener(reconciler);
+        OpenshiftRolloverManager rolloverManager = new OpenshiftRolloverManager(clusterService.getSettings(),
+                clusterService.getClusterSettings(), routingTable, stats, client, threadPool, threadPool::absoluteTimeInMillis);
+        clusterService.addLocalNodeMasterListener(rolloverManager);
+        return Arrays.asList(routingTable, stats, reconciler, rolloverManager);
+    }
 
-        // Init the internal indices map.
-        this.latestAliasAndIndicesLookup = Collections.emptyMap();
+    @Override
+    public List<ActionHandler<? extends ActionRequest, ? extends ActionResponse>> getActions() {
+        return Arrays.asList(
+                new ActionHandler<>(OpenshiftStatsAction.INSTANCE, TransportOpenshiftStatsAction.class),
+                new ActionHandler<>(OpenshiftExplainAction.INSTANCE, TransportOpenshiftExplainAction.class));
+    }
 
-        clusterService.addListener(new IndicesUpdatedListener(client));
-        return Collections.emptyList();
+    @Override
+    public List<RestHandler> getRestHandlers(Settings settings, RestController restController, ClusterSettings clusterSettings,
+                                             IndexScopedSettings indexScopedSettings, SettingsFilter settingsFilter,
+                                             IndexNameExpressionResolver indexNameExpressionResolver,
+                                             Supplier<DiscoveryNodes> nodesInCluster) {
+        return Arrays.asList(new RestOpenshiftStatsAction(settings, restController),
+                new RestOpenshiftExplainAction(settings, restController));
+    }
+
+    @Override
+    public List<ExecutorBuilder<?>> getExecutorBuilders(Settings settings) {
+        return Collections.singletonList(OpenshiftWriteAliasReconciler.executorBuilder(settings));
+    }
+
+    @Override
+    public List<Setting<?>> getSettings() {
+        return Arrays.asList(
+                OpenshiftWriteAliasReconciler.FULL_SWEEP_INTERVAL_SETTING,
+                OpenshiftWriteAliasReconciler.FULL_SWEEP_MAX_INTERVAL_SETTING,
+                OpenshiftWriteAliasReconciler.MAX_PENDING_SETTING,
+                OpenshiftWriteAliasReconciler.MAX_IN_FLIGHT_REQUESTS_SETTING,
+                OpenshiftWriteAliasReconciler.MAX_ACTIONS_PER_REQUEST_SETTING,
+                OpenshiftWriteAliasReconciler.MAX_REQUESTS_PER_SECOND_SETTING,
+                OpenshiftWriteAliasReconciler.PENDING_TASKS_THRESHOLD_SETTING,
+                OpenshiftWriteAliasReconciler.RETRY_INITIAL_DELAY_SETTING,
+                OpenshiftWriteAliasReconciler.RETRY_MAX_DELAY_SETTING,
+                OpenshiftPendingIndexCache.ENABLED_SETTING,
+                OpenshiftPendingIndexCache.MAX_SIZE_SETTING,
+                OpenshiftPendingIndexCache.EXPIRE_AFTER_SETTING,
+                OpenshiftResolvedAliasCache.ENABLED_SETTING,
+                OpenshiftResolvedAliasCache.SIZE_SETTING,
+                OpenshiftDataModelPrefixes.PREFIXES_SETTING,
+                OpenshiftIndexNaming.STYLE_SETTING,
+                OpenshiftIndexNaming.PADDING_SETTING,
+                OpenshiftRolloverManager.ENABLED_SETTING,
+                OpenshiftRolloverManager.INTERVAL_SETTING,
+                OpenshiftRolloverManager.MAX_AGE_SETTING,
+                OpenshiftRolloverManager.MAX_DOCS_SETTING,
+                OpenshiftRolloverManager.MAX_SIZE_SETTING,
+                OpenshiftRolloverManager.MAX_CONCURRENT_REQUESTS_SETTING
+        );
     }
 
     class IndicesUpdatedListener implements ClusterStateListener {
 
-        private Client client;
+        private final OpenshiftWriteAliasReconciler reconciler;
 
-        IndicesUpdatedListener(Client client) {
-            this.client = client;
+        IndicesUpdatedListener(OpenshiftWriteAliasReconciler reconciler) {
+            this.reconciler = reconciler;
         }
 
         @Override
         public void clusterChanged(ClusterChangedEvent event) {
-            // We are interested only in index and its aliases changes. This is part of Cluster MetaData.
-            if (!event.metaDataChanged()) {
-                return;
-            }
-
-            ClusterState eventState = event.state();
+            /*
+             Indices changed while other node was the master are not known to the reconciler,
+             hence the newly elected master checks all of them. The election usually does not change
+             the metadata so it has to be detected first.
+             */
+            boolean elected = event.localNodeMaster() && !event.previousState().nodes().isLocalNodeElectedMaster();
 
-            synchronized (this) {
-                if (eventState.version() > clusterStateVersion) {
-                    latestAliasAndIndicesLookup = eventState.metaData().getAliasAndIndexLookup();
-                    clusterStateVersion = eventState.version();
-                }
+            // Otherwise we are interested only in index and its aliases changes. This is part of Cluster MetaData.
+            if (!elected && !event.metaDataChanged()) {
+                return;
             }
 
             /*
              Any modification of index metadata (including adding index aliases) is done on the master node
              hence we proceed only if the local node is the master node.
 
-             Question: Can it happen that we miss on creating required index alias(es)
-             because the master node is re-election in the meantime?
-             Maybe we could workaround this by scheduling this task once a while...?
+             This listener is called on the cluster state applier thread, the reconciliation itself
+             is executed on the plugin's own executor.
              */
             if (event.localNodeMaster()) {
-
-                List<String> indices = getInitialIndicesWithoutWriteAlias(latestAliasAndIndicesLookup);
-                if (!indices.isEmpty()) {
-                    IndicesAliasesRequestBuilder iarb = client.admin().indices().prepareAliases();
-
-                    for (String index: indices) {
-
-                        String writeAlias = generateWriteAliasName(index);
-                        // Initial indices that were already rolled-over will not have write alias. We need to skip them.
-                        // In other words the writeAlias already exists (perhaps pointed to "-000002" index or older).
-                        if (!writeAlias.isEmpty() && !latestAliasAndIndicesLookup.containsKey(writeAlias)) {
-                            iarb.addAliasAction(AliasActions.add()
-                                    .index(index)
-                                    .alias(writeAlias)
-                                    .writeIndex(true));
-                            logger.trace("Prepared write index alias {} request for index {}", writeAlias, index);
-                        }
-                    }
-
-                    IndicesAliasesRequest iar = iarb.request();
-                    if (!iar.getAliasActions().isEmpty()) {
-                        client.admin().indices().aliases(iar, new ActionListener<AcknowledgedResponse>() {
-                            @Override
-                            public void onResponse(AcknowledgedResponse acknowledgedResponse) {
-                                logger.debug("Write aliases added for the following indices: {}", indices);
-                            }
-
-                            @Override
-                            public void onFailure(Exception e) {
-                                // TODO[lvlcek]: If there is an exception like "Alias already exists" then we can ignore it.
-                                // However, if the index create request fails because the client does not have appropriate credentials
-                                // or any other serious reason then we need to escalate it.
-                                logger.warn("Error occurred when adding write aliases for the following indices: {}. {}", indices, e);
-                            }
-                        });
-                    }
-                }
+                reconciler.schedule(event.state().version(), elected);
+            } else {
+                reconciler.clear();
             }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2021 Lukáš Vlček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsearch.ingest.openshift;
+
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Node level cache of write-aliases that do not exist yet and the initial indices documents were redirected to.
+ *
+ * Until the master adds the write-alias and the new cluster state reaches this node every document sent
+ * to the write-alias is redirected. The cache remembers the redirect so that it does not have to be computed
+ * again for every such document. Entries are expired by the {@link OpenshiftRoutingTable} as soon as the
+ * write-alias appears in the cluster state. Redirects to an index that never appears expire after
+ * {@code expire_after}, and once the cache is full the oldest entry is evicted to make room for a new one.
+ */
+final class OpenshiftPendingIndexCache {
+
+    static final Setting<Boolean> ENABLED_SETTING = Setting.boolSetting(
+            "openshift.ingest.pending_cache.enabled", true, Setting.Property.NodeScope);
+
+    static final Setting<Integer> MAX_SIZE_SETTING = Setting.intSetting(
+            "openshift.ingest.pending_cache.max_size", 10000, 1, Setting.Property.NodeScope);
+
+    static final Setting<TimeValue> EXPIRE_AFTER_SETTING = Setting.timeSetting(
+            "openshift.ingest.pending_cache.expire_after", TimeValue.timeValueMinutes(5), TimeValue.timeValueMillis(1),
+            Setting.Property.NodeScope);
+
+    private final Map<String, Entry> initialIndices = ConcurrentCollections.newConcurrentMap();
+    private final int maxSize;
+    private final long expireAfterMillis;
+    private final OpenshiftIndexNaming naming;
+    private final LongSupplier relativeTimeInMillis;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    OpenshiftPendingIndexCache(final Settings settings) {
+        this(settings, OpenshiftIndexNaming.create(settings));
+    }
+
+    OpenshiftPendingIndexCache(final Settings settings, final OpenshiftIndexNaming naming) {
+        this(settings, naming, () -> TimeUnit.NANOSECONDS.toMillis(System.nanoTime()));
+    }
+
+    OpenshiftPendingIndexCache(final Settings settings, final OpenshiftIndexNaming naming, final LongSupplier relativeTimeInMillis) {
+        this.maxSize = MAX_SIZE_SETTING.get(settings);
+        this.expireAfterMillis = EXPIRE_AFTER_SETTING.get(settings).millis();
+        this.naming = naming;
+        this.relativeTimeInMillis = relativeTimeInMillis;
+    }
+
+    /**
+     * @param settings node settings
+     * @param naming naming of initial indices
+     * @return new cache or null if it is disabled
+     */
+    static OpenshiftPendingIndexCache create(final Settings settings, final OpenshiftIndexNaming naming) {
+        return ENABLED_SETTING.get(settings) ? new OpenshiftPendingIndexCache(settings, naming) : null;
+    }
+
+    /**
+     * @param writeAlias write-alias that is known not to exist
+     * @return name of the initial index documents sent to the write-alias are redirected to
+     */
+    String getInitialIndex(final String writeAlias) {
+        long now = relativeTimeInMillis.getAsLong();
+        Entry entry = initialIndices.get(writeAlias);
+        if (entry != null && entry.expiresMillis > now) {
+            hits.increment();
+            return entry.index;
+        }
+        misses.increment();
+        String index = naming.initialIndexName(writeAlias, System.currentTimeMillis());
+        if (entry == null && initialIndices.size() >= maxSize) {
+            evict(now);
+        }
+        initialIndices.put(writeAlias, new Entry(index, now + expireAfterMillis));
+        return index;
+    }
+
+    /**
+     * Removes expired entries, if there are none the entry that expires first (the oldest one) is removed.
+     * The whole cache is scanned, it happens only when the cache is full.
+     */
+    private synchronized void evict(final long now) {
+        if (initialIndices.size() < maxSize) {
+            return;
+        }
+        String oldest = null;
+        long oldestExpiresMillis = Long.MAX_VALUE;
+        Iterator<Map.Entry<String, Entry>> iterator = initialIndices.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Entry> next = iterator.next();
+            long expiresMillis = next.getValue().expiresMillis;
+            if (expiresMillis <= now) {
+                iterator.remove();
+                evictions.increment();
+            } else if (expiresMillis < oldestExpiresMillis) {
+                oldest = next.getKey();
+                oldestExpiresMillis = expiresMillis;
+            }
+        }
+        if (initialIndices.size() >= maxSize && oldest != null && initialIndices.remove(oldest) != null) {
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Same as {@link #getInitialIndex(String)} but nothing is remembered or counted.
+     *
+     * @param writeAlias write-alias
+     * @return previously remembered initial index or null
+     */
+    String lookup(final String writeAlias) {
+        Entry entry = initialIndices.get(writeAlias);
+        return entry == null || entry.expiresMillis <= relativeTimeInMillis.getAsLong() ? null : entry.index;
+    }
+
+    /**
+     * Called when the write-alias appears in the cluster state.
+     */
+    void expire(final String writeAlias) {
+        initialIndices.remove(writeAlias);
+    }
+
+    void clear() {
+        initialIndices.clear();
+    }
+
+    OpenshiftIndexNaming getNaming() {
+        return naming;
+    }
+
+    int size() {
+        return initialIndices.size();
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    long getEvictions() {
+        return evictions.sum();
+    }
+
+    private static final class Entry {
+        private final String index;
+        private final long expiresMillis;
+
+        private Entry(final String index, final long expiresMillis) {
+            this.index = index;
+            this.expiresMillis = expiresMillis;
+        }
+    }
+}
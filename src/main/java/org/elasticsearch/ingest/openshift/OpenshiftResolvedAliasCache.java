@@ -0,0 +1,112 @@
+/*
+ * Copyright 2021 Lukáš Vlček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsearch.ingest.openshift;
+
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Settings;
+
+/**
+ * Per thread cache of recently resolved write-aliases.
+ *
+ * Documents of a bulk request go through the pipeline one after another on the same thread and they are usually
+ * sent to just a few write-aliases. The first document resolves the write-alias using the {@link OpenshiftRoutingTable},
+ * all the following ones reuse the result as long as the table does not change.
+ *
+ * Every thread has its own small direct mapped table, there is no contention between threads and once the entries
+ * are created nothing is allocated. Entries are tagged with {@link OpenshiftRoutingTable#getGeneration()} at the time
+ * the write-alias was resolved, any change of the routing table invalidates all of them.
+ *
+ * If the cache is disabled every thread still has a single entry the result is resolved into, but it is never
+ * considered valid.
+ */
+final class OpenshiftResolvedAliasCache {
+
+    static final Setting<Boolean> ENABLED_SETTING = Setting.boolSetting(
+            "openshift.ingest.resolved_cache.enabled", true, Setting.Property.NodeScope);
+
+    static final Setting<Integer> SIZE_SETTING = Setting.intSetting(
+            "openshift.ingest.resolved_cache.size", 64, 1, 4096, Setting.Property.NodeScope);
+
+    /**
+     * Where documents sent to the write-alias go.
+     */
+    enum Route {
+        // Write-alias does not exist, redirect to the initial index
+        REDIRECT,
+        // Write-alias exists
+        PASS_THROUGH,
+        // Write-alias name is a concrete index
+        NOT_FOUND
+    }
+
+    static final class Entry {
+        private String writeAlias;
+        private long generation;
+        Route route;
+        // Initial index if the route is REDIRECT
+        String index;
+        // Exception thrown for every document if the route is NOT_FOUND, created at most once per generation
+        RuntimeException failure;
+    }
+
+    private final boolean enabled;
+    private final int mask;
+    private final ThreadLocal<Entry[]> entries;
+
+    OpenshiftResolvedAliasCache(final Settings settings) {
+        this.enabled = ENABLED_SETTING.get(settings);
+        // Round up to power of two
+        int size = enabled ? Integer.highestOneBit(SIZE_SETTING.get(settings) * 2 - 1) : 1;
+        this.mask = size - 1;
+        this.entries = ThreadLocal.withInitial(() -> {
+            Entry[] table = new Entry[size];
+            for (int i = 0; i < size; i++) {
+                table[i] = new Entry();
+            }
+            return table;
+        });
+    }
+
+    /**
+     * @param writeAlias name of write-alias
+     * @return entry of this thread for the write-alias, check {@link #isResolved(Entry, String, long)} before using it
+     */
+    Entry entry(final String writeAlias) {
+        return entries.get()[writeAlias.hashCode() & mask];
+    }
+
+    /**
+     * @return true iff the entry holds the route of the write-alias resolved in the given generation
+     */
+    boolean isResolved(final Entry entry, final String writeAlias, final long generation) {
+        return enabled && entry.generation == generation && writeAlias.equals(entry.writeAlias);
+    }
+
+    /**
+     * Replace whatever the entry holds.
+     *
+     * @param generation generation of the routing table read before the write-alias was resolved
+     */
+    static void update(final Entry entry, final String writeAlias, final long generation, final Route route,
+                       final String index) {
+        entry.writeAlias = writeAlias;
+        entry.generation = generation;
+        entry.route = route;
+        entry.index = index;
+        entry.failure = null;
+    }
+}
@@ -0,0 +1,403 @@
+/*
+ * Copyright 2021 Lukáš Vlček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsearch.ingest.openshift;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.admin.indices.rollover.RolloverRequest;
+import org.elasticsearch.action.admin.indices.rollover.RolloverResponse;
+import org.elasticsearch.action.admin.indices.stats.CommonStats;
+import org.elasticsearch.action.admin.indices.stats.IndexStats;
+import org.elasticsearch.action.admin.indices.stats.IndicesStatsResponse;
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.LocalNodeMasterListener;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.settings.ClusterSettings;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.threadpool.Scheduler;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * Rolls over data model write-aliases when their write index meets any of the configured conditions.
+ * This is done on the master node only and it is disabled by default.
+ *
+ * Every {@link #INTERVAL_SETTING} the write-aliases known to the {@link OpenshiftRoutingTable} are checked. Instead
+ * of sending a rollover request for every write-alias (each of them would fetch stats of its own index) the stats
+ * of all write indices are fetched with a single indices stats request and the conditions are evaluated locally.
+ * The max age condition needs no stats at all, it is evaluated from the index creation date.
+ *
+ * Rollover requests are sent only for write-aliases that meet the conditions and there are at most
+ * {@link #MAX_CONCURRENT_REQUESTS_SETTING} of them in flight. The requests carry the same conditions, hence the
+ * master still decides with the latest stats and nothing is rolled over twice. The next check does not start until
+ * all requests of the previous one completed.
+ *
+ * All settings are dynamic.
+ */
+final class OpenshiftRolloverManager implements LocalNodeMasterListener {
+
+    private static final Logger logger = LogManager.getLogger(OpenshiftRolloverManager.class);
+
+    static final Setting<Boolean> ENABLED_SETTING = Setting.boolSetting(
+            "openshift.ingest.rollover.enabled", false, Setting.Property.NodeScope, Setting.Property.Dynamic);
+
+    static final Setting<TimeValue> INTERVAL_SETTING = Setting.timeSetting(
+            "openshift.ingest.rollover.interval", TimeValue.timeValueMinutes(5), TimeValue.timeValueSeconds(1),
+            Setting.Property.NodeScope, Setting.Property.Dynamic);
+
+    // Conditions are not set by default (-1)
+    static final Setting<TimeValue> MAX_AGE_SETTING = Setting.timeSetting(
+            "openshift.ingest.rollover.max_age", TimeValue.MINUS_ONE, TimeValue.MINUS_ONE,
+            Setting.Property.NodeScope, Setting.Property.Dynamic);
+
+    static final Setting<Long> MAX_DOCS_SETTING = Setting.longSetting(
+            "openshift.ingest.rollover.max_docs", -1, -1, Setting.Property.NodeScope, Setting.Property.Dynamic);
+
+    static final Setting<ByteSizeValue> MAX_SIZE_SETTING = Setting.byteSizeSetting(
+            "openshift.ingest.rollover.max_size", new ByteSizeValue(-1), new ByteSizeValue(-1),
+            new ByteSizeValue(Long.MAX_VALUE), Setting.Property.NodeScope, Setting.Property.Dynamic);
+
+    static final Setting<Integer> MAX_CONCURRENT_REQUESTS_SETTING = Setting.intSetting(
+            "openshift.ingest.rollover.max_concurrent_requests", 4, 1, Setting.Property.NodeScope, Setting.Property.Dynamic);
+
+    private final OpenshiftRoutingTable routingTable;
+    private final OpenshiftStats stats;
+    private final Client client;
+    private final ThreadPool threadPool;
+    private final LongSupplier absoluteTimeInMillis;
+
+    private volatile boolean enabled;
+    private volatile TimeValue interval;
+    private volatile TimeValue maxAge;
+    private volatile long maxDocs;
+    private volatile ByteSizeValue maxSize;
+    private volatile int maxConcurrentRequests;
+
+    private volatile boolean master = false;
+    private volatile Scheduler.Cancellable scheduled;
+
+    // Set while a check or any of its rollover requests are running
+    private final AtomicBoolean checking = new AtomicBoolean(false);
+
+    // Write-aliases of the current check waiting to be rolled over, guarded by this
+    private final Deque<String> queue = new ArrayDeque<>();
+    private int inFlightRequests = 0;
+
+    OpenshiftRolloverManager(final Settings settings, final ClusterSettings clusterSettings,
+                             final OpenshiftRoutingTable routingTable, final OpenshiftStats stats, final Client client,
+                             final ThreadPool threadPool, final LongSupplier absoluteTimeInMillis) {
+        this.routingTable = routingTable;
+        this.stats = stats;
+        this.client = client;
+        this.threadPool = threadPool;
+        this.absoluteTimeInMillis = absoluteTimeInMillis;
+        this.enabled = ENABLED_SETTING.get(settings);
+        this.interval = INTERVAL_SETTING.get(settings);
+        this.maxAge = MAX_AGE_SETTING.get(settings);
+        this.maxDocs = MAX_DOCS_SETTING.get(settings);
+        this.maxSize = MAX_SIZE_SETTING.get(settings);
+        this.maxConcurrentRequests = MAX_CONCURRENT_REQUESTS_SETTING.get(settings);
+        clusterSettings.addSettingsUpdateConsumer(ENABLED_SETTING, this::setEnabled);
+        clusterSettings.addSettingsUpdateConsumer(INTERVAL_SETTING, this::setInterval);
+        clusterSettings.addSettingsUpdateConsumer(MAX_AGE_SETTING, value -> this.maxAge = value);
+        clusterSettings.addSettingsUpdateConsumer(MAX_DOCS_SETTING, value -> this.maxDocs = value);
+        clusterSettings.addSettingsUpdateConsumer(MAX_SIZE_SETTING, value -> this.maxSize = value);
+        clusterSettings.addSettingsUpdateConsumer(MAX_CONCURRENT_REQUESTS_SETTING, value -> this.maxConcurrentRequests = value);
+    }
+
+    private synchronized void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+        reschedule();
+    }
+
+    private synchronized void setInterval(final TimeValue interval) {
+        this.interval = interval;
+        reschedule();
+    }
+
+    @Override
+    public synchronized void onMaster() {
+        master = true;
+        reschedule();
+    }
+
+    @Override
+    public synchronized void offMaster() {
+        master = false;
+        // Let the new master do the rest, requests in flight are let to complete
+        queue.clear();
+        reschedule();
+    }
+
+    @Override
+    public String executorName() {
+        return ThreadPool.Names.SAME;
+    }
+
+    private synchronized void reschedule() {
+        Scheduler.Cancellable cancellable = scheduled;
+        if (cancellable != null) {
+            cancellable.cancel();
+            scheduled = null;
+            logger.debug("Rollover checks stopped");
+        }
+        if (master && enabled) {
+            scheduled = threadPool.scheduleWithFixedDelay(this::check, interval, OpenshiftWriteAliasReconciler.EXECUTOR);
+            logger.debug("Rollover checks started, interval [{}]", interval);
+        }
+    }
+
+    private boolean hasAnyCondition() {
+        return maxAge.millis() >= 0 || maxDocs >= 0 || maxSize.getBytes() >= 0;
+    }
+
+    /**
+     * Check all data model write-aliases and roll over those that meet the conditions. Does nothing if the
+     * previous check did not complete yet.
+     */
+    void check() {
+        if (!enabled || !hasAnyCondition()) {
+            return;
+        }
+        if (!checking.compareAndSet(false, true)) {
+            logger.debug("Previous rollover check did not complete yet, skipping");
+            return;
+        }
+        final Conditions conditions = new Conditions(maxAge, maxDocs, maxSize);
+        try {
+            stats.rolloverChecks.increment();
+            OpenshiftRoutingTable.Snapshot snapshot = routingTable.snapshot();
+            final Map<String, IndexMetaData> writeIndices = new LinkedHashMap<>();
+            for (String writeAlias : snapshot.getWriteAliases()) {
+                IndexMetaData imd = snapshot.getWriteIndex(writeAlias);
+                if (imd != null && imd.getState() == IndexMetaData.State.OPEN) {
+                    writeIndices.put(writeAlias, imd);
+                }
+            }
+            if (writeIndices.isEmpty()) {
+                checking.set(false);
+                return;
+            }
+            if (!conditions.needStats()) {
+                rollover(select(writeIndices, conditions, null), conditions);
+                return;
+            }
+            List<String> indices = new ArrayList<>(writeIndices.size());
+            for (IndexMetaData imd : writeIndices.values()) {
+                indices.add(imd.getIndex().getName());
+            }
+            client.admin().indices().prepareStats(indices.toArray(new String[0]))
+                    .clear()
+                    .setDocs(true)
+                    .setIndicesOptions(IndicesOptions.lenientExpandOpen())
+                    .execute(new ActionListener<IndicesStatsResponse>() {
+                        @Override
+                        public void onResponse(IndicesStatsResponse response) {
+                            rollover(select(writeIndices, conditions, response), conditions);
+                        }
+
+                        @Override
+                        public void onFailure(Exception e) {
+                            logger.warn("Failed to get stats of write indices for the rollover check", e);
+                            checking.set(false);
+                        }
+                    });
+        } catch (Exception e) {
+            logger.warn("Rollover check failed", e);
+            checking.set(false);
+        }
+    }
+
+    /**
+     * @param writeIndices write-aliases and metadata of their write indices
+     * @param response stats of the write indices, can be null if conditions do not need them
+     * @return write-aliases whose write index meets any of the conditions
+     */
+    List<String> select(final Map<String, IndexMetaData> writeIndices, final Conditions conditions,
+                        final IndicesStatsResponse response) {
+        long now = absoluteTimeInMillis.getAsLong();
+        List<String> selected = new ArrayList<>();
+        for (Map.Entry<String, IndexMetaData> entry : writeIndices.entrySet()) {
+            IndexMetaData imd = entry.getValue();
+            CommonStats primaries = null;
+            if (response != null) {
+                IndexStats indexStats = response.getIndex(imd.getIndex().getName());
+                primaries = indexStats == null ? null : indexStats.getPrimaries();
+            }
+            if (conditions.met(now - imd.getCreationDate(), primaries)) {
+                selected.add(entry.getKey());
+            }
+        }
+        return selected;
+    }
+
+    private void rollover(final List<String> writeAliases, final Conditions conditions) {
+        if (writeAliases.isEmpty()) {
+            checking.set(false);
+            return;
+        }
+        logger.debug("Rolling over {} write aliases", writeAliases.size());
+        synchronized (this) {
+            queue.addAll(writeAliases);
+        }
+        maybeSendNext(conditions);
+    }
+
+    private void maybeSendNext(final Conditions conditions) {
+        final List<String> writeAliases = new ArrayList<>();
+        synchronized (this) {
+            while (inFlightRequests < maxConcurrentRequests && !queue.isEmpty()) {
+                writeAliases.add(queue.poll());
+                inFlightRequests++;
+            }
+            if (inFlightRequests == 0 && queue.isEmpty()) {
+                checking.set(false);
+            }
+        }
+        for (String writeAlias : writeAliases) {
+            send(writeAlias, conditions);
+        }
+    }
+
+    private void send(final String writeAlias, final Conditions conditions) {
+        // New index name is derived from the current write index, app-foo-000001 is followed by app-foo-000002
+        RolloverRequest request = new RolloverRequest(writeAlias, newIndexName(writeAlias));
+        conditions.addTo(request);
+
+        stats.rolloverRequests.increment();
+        final long start = System.nanoTime();
+
+        client.admin().indices().rolloverIndex(request, new ActionListener<RolloverResponse>() {
+            @Override
+            public void onResponse(RolloverResponse response) {
+                stats.rolloverRequestTime.record(System.nanoTime() - start);
+                if (response.isRolledOver()) {
+                    stats.rolledOver.increment();
+                    logger.debug("Write alias {} rolled over from {} to {}", writeAlias, response.getOldIndex(),
+                            response.getNewIndex());
+                }
+                completed(conditions);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                stats.rolloverRequestTime.record(System.nanoTime() - start);
+                stats.rolloverRequestsFailed.increment();
+                logger.warn("Error occurred when rolling over write alias {}. {}", writeAlias, e);
+                completed(conditions);
+            }
+        });
+    }
+
+    /**
+     * Elasticsearch names the new index with 6 digits padding, other naming styles need the name explicitly.
+     *
+     * @return name of the new index or null to let Elasticsearch derive it
+     */
+    private String newIndexName(final String writeAlias) {
+        OpenshiftIndexNaming naming = routingTable.getNaming();
+        if (naming == OpenshiftIndexNaming.DEFAULT) {
+            return null;
+        }
+        IndexMetaData imd = routingTable.snapshot().getWriteIndex(writeAlias);
+        return imd == null ? null : naming.nextIndexName(imd.getIndex().getName(), absoluteTimeInMillis.getAsLong());
+    }
+
+    private void completed(final Conditions conditions) {
+        synchronized (this) {
+            inFlightRequests--;
+        }
+        maybeSendNext(conditions);
+    }
+
+    boolean isChecking() {
+        return checking.get();
+    }
+
+    /**
+     * @return number of write-aliases waiting to be rolled over
+     */
+    synchronized int getQueuedCount() {
+        return queue.size();
+    }
+
+    synchronized int getInFlightCount() {
+        return inFlightRequests;
+    }
+
+    /**
+     * Conditions used during a single check. Negative values mean that the condition is not set.
+     */
+    static final class Conditions {
+
+        private final TimeValue maxAge;
+        private final long maxDocs;
+        private final ByteSizeValue maxSize;
+
+        Conditions(final TimeValue maxAge, final long maxDocs, final ByteSizeValue maxSize) {
+            this.maxAge = maxAge;
+            this.maxDocs = maxDocs;
+            this.maxSize = maxSize;
+        }
+
+        boolean needStats() {
+            return maxDocs >= 0 || maxSize.getBytes() >= 0;
+        }
+
+        /**
+         * Same as the rollover action, docs and size are taken from primaries.
+         *
+         * @param age age of the write index in millis
+         * @param primaries stats of the write index, can be null
+         */
+        boolean met(final long age, final CommonStats primaries) {
+            if (maxAge.millis() >= 0 && age >= maxAge.millis()) {
+                return true;
+            }
+            if (primaries == null || primaries.getDocs() == null) {
+                return false;
+            }
+            return (maxDocs >= 0 && primaries.getDocs().getCount() >= maxDocs)
+                    || (maxSize.getBytes() >= 0 && primaries.getDocs().getTotalSizeInBytes() >= maxSize.getBytes());
+        }
+
+        void addTo(final RolloverRequest request) {
+            if (maxAge.millis() >= 0) {
+                request.addMaxIndexAgeCondition(maxAge);
+            }
+            if (maxDocs >= 0) {
+                request.addMaxIndexDocsCondition(maxDocs);
+            }
+            if (maxSize.getBytes() >= 0) {
+                request.addMaxIndexSizeCondition(maxSize);
+            }
+        }
+    }
+}
@@ -0,0 +1,556 @@
+/*
+ * Copyright 2021 Lukáš Vlček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsearch.ingest.openshift;
+
+import com.carrotsearch.hppc.cursors.ObjectCursor;
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.ClusterStateListener;
+import org.elasticsearch.cluster.metadata.AliasMetaData;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.index.Index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static org.elasticsearch.ingest.openshift.OpenshiftIndicesUtil.hasWriteIndexAlias;
+
+/**
+ * Node level lookup table of data model write-aliases and initial indices shared by all
+ * {@link OpenshiftIndexProcessor} instances.
+ *
+ * There is exactly one instance of this table per node. It is owned by the {@link OpenshiftIngestPlugin}
+ * which registers it as a cluster state listener when the node components are created. Processor instances
+ * only read from it, this means that redefining or deleting a pipeline does not leave any listener behind.
+ *
+ * The table does not keep the whole alias and index lookup of the cluster. It holds only names that follow
+ * the data model naming schema (see {@link #hasDataModelPrefix(String)}) and it is updated incrementally
+ * from indices that were created, deleted or changed in the particular cluster change event.
+ *
+ * The routing data and the cluster state version it reflects are held together by an immutable {@link Snapshot}.
+ * Every change builds a new snapshot and publishes it with compare-and-set, a snapshot of an older cluster state
+ * version never replaces a newer one. Readers never lock and always see a consistent view.
+ */
+public final class OpenshiftRoutingTable implements ClusterStateListener {
+
+    /**
+     * What the name of a write-alias resolves to.
+     */
+    public enum Target {
+        NONE,
+        ALIAS,
+        INDEX
+    }
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(Snapshot.EMPTY);
+
+    // Notified about every initial index that was added or changed and has no write-alias
+    private volatile Consumer<String> missingWriteAliasConsumer = index -> {};
+
+    // Redirects to initial indices issued by processors, can be null if disabled
+    private final OpenshiftPendingIndexCache pendingIndexCache;
+    private final OpenshiftIndexNaming naming;
+
+    OpenshiftRoutingTable() {
+        this(null);
+    }
+
+    OpenshiftRoutingTable(final OpenshiftPendingIndexCache pendingIndexCache) {
+        this(pendingIndexCache, pendingIndexCache == null ? OpenshiftIndexNaming.DEFAULT : pendingIndexCache.getNaming());
+    }
+
+    /**
+     * @param pendingIndexCache can be null
+     * @param naming naming of data model indices, the pending index cache must use the same one
+     */
+    OpenshiftRoutingTable(final OpenshiftPendingIndexCache pendingIndexCache, final OpenshiftIndexNaming naming) {
+        assert pendingIndexCache == null || pendingIndexCache.getNaming() == naming;
+        this.pendingIndexCache = pendingIndexCache;
+        this.naming = naming;
+    }
+
+    @Override
+    public void clusterChanged(ClusterChangedEvent event) {
+        // We are interested only in index and its aliases changes. This is part of Cluster MetaData.
+        if (!event.metaDataChanged()) {
+            return;
+        }
+
+        ClusterState eventState = event.state();
+
+        Snapshot current;
+        Builder builder;
+        do {
+            current = snapshot.get();
+            if (eventState.version() <= current.clusterStateVersion) {
+                return;
+            }
+            builder = new Builder(current, current.prefixes, naming);
+            if (current.metaData != null && current.metaData == event.previousState().metaData()) {
+                builder.applyDelta(event.previousState().metaData(), event);
+            } else {
+                // The very first event or we missed some change, build the table from scratch.
+                builder.rebuild(eventState.metaData());
+            }
+        } while (!publish(current, builder.build(eventState.version(), eventState.metaData()), builder));
+    }
+
+    /**
+     * The table is rebuilt from the metadata it currently reflects, names that are no longer part of the data model
+     * are dropped and initial indices that became part of it are reported to the missing write-alias consumer.
+     *
+     * @param prefixes new data model prefixes
+     */
+    void setDataModelPrefixes(final List<String> prefixes) {
+        OpenshiftDataModelPrefixes compiled = new OpenshiftDataModelPrefixes(prefixes);
+        Snapshot current;
+        Builder builder;
+        do {
+            current = snapshot.get();
+            builder = new Builder(current, compiled, naming);
+            if (current.metaData != null) {
+                builder.rebuild(current.metaData);
+            }
+        } while (!publish(current, builder.build(current.clusterStateVersion, current.metaData), builder));
+    }
+
+    /**
+     * Side effects of the change are carried out only once the new snapshot is visible to readers. Pending
+     * redirects must not be expired before processors can see the write-alias, they could be remembered again.
+     *
+     * @return false if some other change was published since the builder was created
+     */
+    private boolean publish(final Snapshot current, final Snapshot next, final Builder builder) {
+        if (!snapshot.compareAndSet(current, next)) {
+            return false;
+        }
+        if (pendingIndexCache != null) {
+            if (builder.rebuilt) {
+                pendingIndexCache.clear();
+            } else {
+                for (String writeAlias : builder.appeared) {
+                    pendingIndexCache.expire(writeAlias);
+                }
+            }
+        }
+        Consumer<String> consumer = missingWriteAliasConsumer;
+        for (String index : builder.missingWriteAlias) {
+            consumer.accept(index);
+        }
+        return true;
+    }
+
+    void setMissingWriteAliasConsumer(final Consumer<String> consumer) {
+        this.missingWriteAliasConsumer = consumer;
+    }
+
+    /**
+     * @return naming of data model indices, it never changes
+     */
+    public OpenshiftIndexNaming getNaming() {
+        return naming;
+    }
+
+    /**
+     * @return the current routing data, it never changes
+     */
+    public Snapshot snapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * @param name index or alias name
+     * @return true iff the name follows the data model naming schema configured on this node
+     */
+    public boolean hasDataModelPrefix(final String name) {
+        return snapshot.get().hasDataModelPrefix(name);
+    }
+
+    /**
+     * Only data model names are tracked, for any other name this returns {@link Target#NONE}.
+     *
+     * @param name name of write-alias
+     * @return what the name resolves to
+     */
+    public Target resolve(final String name) {
+        return snapshot.get().resolve(name);
+    }
+
+    /**
+     * @param writeAlias name of write-alias that does not exist, see {@link #resolve(String)}
+     * @return initial index documents sent to the write-alias are redirected to
+     */
+    public String getInitialIndex(final String writeAlias) {
+        if (pendingIndexCache == null) {
+            return naming.initialIndexName(writeAlias, System.currentTimeMillis());
+        }
+        String index = pendingIndexCache.getInitialIndex(writeAlias);
+        // The write-alias could have appeared after it was resolved and before the redirect was remembered.
+        // Entries are expired after the snapshot is published, hence this check makes sure such entry does not stay.
+        if (resolve(writeAlias) != Target.NONE) {
+            pendingIndexCache.expire(writeAlias);
+        }
+        return index;
+    }
+
+    OpenshiftPendingIndexCache getPendingIndexCache() {
+        return pendingIndexCache;
+    }
+
+    /**
+     * @return Names of data model initial indices that have no write-alias.
+     */
+    public List<String> getInitialIndicesWithoutWriteAlias() {
+        return snapshot.get().getInitialIndicesWithoutWriteAlias();
+    }
+
+    /**
+     * @param index name of index
+     * @return true iff the index is data model initial index that has no write-alias
+     */
+    public boolean isMissingWriteAlias(final String index) {
+        return snapshot.get().isMissingWriteAlias(index);
+    }
+
+    /**
+     * Anything resolved from the table before the generation changed can be outdated.
+     *
+     * @return number of changes of the table so far
+     */
+    public long getGeneration() {
+        return snapshot.get().generation;
+    }
+
+    /**
+     * @return version of the cluster state the table was last updated from
+     */
+    public long getClusterStateVersion() {
+        return snapshot.get().clusterStateVersion;
+    }
+
+    /**
+     * Immutable routing data of a particular cluster state version.
+     */
+    public static final class Snapshot {
+
+        static final Snapshot EMPTY = new Snapshot(Long.MIN_VALUE, 0, null, OpenshiftDataModelPrefixes.DEFAULT,
+                Collections.emptyMap(), Collections.emptySet(), Collections.emptyMap());
+
+        private final long clusterStateVersion;
+        private final long generation;
+        // Metadata the snapshot reflects. It is only used to find out if the next event can be applied
+        // as a delta and it is the same instance that the cluster state holds anyway.
+        private final MetaData metaData;
+        private final OpenshiftDataModelPrefixes prefixes;
+
+        // Data model write-aliases and names of indices they point to
+        private final Map<String, Set<String>> writeAliases;
+        // Data model indices that are named like a write-alias
+        private final Set<String> writeIndices;
+        // Data model initial indices and whether they have any alias with the write flag
+        private final Map<String, Boolean> initialIndices;
+
+        private Snapshot(final long clusterStateVersion, final long generation, final MetaData metaData,
+                         final OpenshiftDataModelPrefixes prefixes, final Map<String, Set<String>> writeAliases,
+                         final Set<String> writeIndices, final Map<String, Boolean> initialIndices) {
+            this.clusterStateVersion = clusterStateVersion;
+            this.generation = generation;
+            this.metaData = metaData;
+            this.prefixes = prefixes;
+            this.writeAliases = writeAliases;
+            this.writeIndices = writeIndices;
+            this.initialIndices = initialIndices;
+        }
+
+        /**
+         * @see OpenshiftRoutingTable#resolve(String)
+         */
+        public Target resolve(final String name) {
+            if (writeAliases.containsKey(name)) {
+                return Target.ALIAS;
+            }
+            if (writeIndices.contains(name)) {
+                return Target.INDEX;
+            }
+            return Target.NONE;
+        }
+
+        public boolean hasDataModelPrefix(final String name) {
+            return prefixes.matches(name);
+        }
+
+        public boolean isMissingWriteAlias(final String index) {
+            return Boolean.FALSE.equals(initialIndices.get(index));
+        }
+
+        /**
+         * The initial index of the write-alias could have been named on an earlier day than today (dated naming),
+         * hence all initial indices are scanned. It is meant for the explain API, not for every document.
+         *
+         * @param writeAlias name of write-alias
+         * @param naming naming the initial indices follow
+         * @return the initial index of the write-alias that exists without write-alias (the latest one if there are
+         * more), or null if there is none
+         */
+        public String getInitialIndexWithoutWriteAlias(final String writeAlias, final OpenshiftIndexNaming naming) {
+            String found = null;
+            for (Map.Entry<String, Boolean> entry : initialIndices.entrySet()) {
+                String index = entry.getKey();
+                if (!entry.getValue() && (found == null || index.compareTo(found) > 0)
+                        && writeAlias.equals(naming.writeAliasName(index))) {
+                    found = index;
+                }
+            }
+            return found;
+        }
+
+        public List<String> getInitialIndicesWithoutWriteAlias() {
+            List<String> indices = new ArrayList<>();
+            for (Map.Entry<String, Boolean> entry : initialIndices.entrySet()) {
+                if (!entry.getValue()) {
+                    indices.add(entry.getKey());
+                }
+            }
+            return indices;
+        }
+
+        public Set<String> getWriteAliases() {
+            return Collections.unmodifiableSet(writeAliases.keySet());
+        }
+
+        /**
+         * @param writeAlias data model write-alias
+         * @return metadata of the index the write-alias writes to, null if it is not known
+         */
+        public IndexMetaData getWriteIndex(final String writeAlias) {
+            Set<String> indices = writeAliases.get(writeAlias);
+            if (indices == null) {
+                return null;
+            }
+            for (String index : indices) {
+                IndexMetaData imd = metaData.index(index);
+                AliasMetaData alias = imd == null ? null : imd.getAliases().get(writeAlias);
+                if (alias == null) {
+                    continue;
+                }
+                // Alias of a single index without the write flag writes to that index
+                if (Boolean.TRUE.equals(alias.writeIndex()) || (alias.writeIndex() == null && indices.size() == 1)) {
+                    return imd;
+                }
+            }
+            return null;
+        }
+
+        public long getClusterStateVersion() {
+            return clusterStateVersion;
+        }
+
+        public long getGeneration() {
+            return generation;
+        }
+
+        /**
+         * @return true iff both snapshots hold the very same routing data, nothing was copied between them
+         */
+        boolean sharesRoutingWith(final Snapshot other) {
+            return writeAliases == other.writeAliases && writeIndices == other.writeIndices
+                    && initialIndices == other.initialIndices;
+        }
+    }
+
+    /**
+     * Builds the next snapshot. Maps of the base snapshot are copied only once something really changes,
+     * metadata changes that do not touch the data model names (like mapping updates) cost no copying.
+     */
+    private static final class Builder {
+
+        private final Snapshot base;
+        private final OpenshiftDataModelPrefixes prefixes;
+        private final OpenshiftIndexNaming naming;
+
+        private Map<String, Set<String>> writeAliases;
+        private Set<String> writeIndices;
+        private Map<String, Boolean> initialIndices;
+        private boolean copied = false;
+
+        private boolean rebuilt = false;
+        // Write-aliases and write-named indices that were added
+        private final List<String> appeared = new ArrayList<>();
+        // Initial indices that were added or changed and have no write-alias
+        private final List<String> missingWriteAlias = new ArrayList<>();
+
+        private Builder(final Snapshot base, final OpenshiftDataModelPrefixes prefixes, final OpenshiftIndexNaming naming) {
+            this.base = base;
+            this.prefixes = prefixes;
+            this.naming = naming;
+            this.writeAliases = base.writeAliases;
+            this.writeIndices = base.writeIndices;
+            this.initialIndices = base.initialIndices;
+        }
+
+        private void copy() {
+            if (!copied) {
+                writeAliases = new HashMap<>(writeAliases);
+                writeIndices = new HashSet<>(writeIndices);
+                initialIndices = new HashMap<>(initialIndices);
+                copied = true;
+            }
+        }
+
+        private void rebuild(final MetaData current) {
+            writeAliases = new HashMap<>();
+            writeIndices = new HashSet<>();
+            initialIndices = new HashMap<>();
+            copied = true;
+            rebuilt = true;
+            for (IndexMetaData imd : current) {
+                addIndex(imd);
+            }
+        }
+
+        private void applyDelta(final MetaData previous, final ClusterChangedEvent event) {
+            Set<String> deleted = new HashSet<>();
+            for (Index index : event.indicesDeleted()) {
+                removeIndex(index.getName(), previous.index(index));
+                deleted.add(index.getName());
+            }
+            // Created indices have no previous metadata, changed indices have a different metadata instance.
+            for (ObjectCursor<IndexMetaData> cursor : event.state().metaData().indices().values()) {
+                IndexMetaData current = cursor.value;
+                String name = current.getIndex().getName();
+                // Index deleted and created again under the same name was removed already
+                IndexMetaData before = deleted.contains(name) ? null : previous.index(name);
+                if (before != current) {
+                    if (before != null) {
+                        if (sameRouting(before, current)) {
+                            continue;
+                        }
+                        removeIndex(name, before);
+                    }
+                    addIndex(current);
+                }
+            }
+        }
+
+        private boolean isDataModelWriteAlias(final String alias) {
+            return prefixes.matches(alias) && naming.isWriteAliasName(alias);
+        }
+
+        /**
+         * @return true iff both versions of index metadata contribute to the table the same way
+         */
+        private boolean sameRouting(final IndexMetaData before, final IndexMetaData current) {
+            String name = current.getIndex().getName();
+            if (prefixes.matches(name) && naming.isInitialIndex(name)
+                    && hasWriteIndexAlias(before) != hasWriteIndexAlias(current)) {
+                return false;
+            }
+            int aliases = 0;
+            for (ObjectCursor<String> alias : current.getAliases().keys()) {
+                if (isDataModelWriteAlias(alias.value)) {
+                    if (!before.getAliases().containsKey(alias.value)) {
+                        return false;
+                    }
+                    aliases++;
+                }
+            }
+            for (ObjectCursor<String> alias : before.getAliases().keys()) {
+                if (isDataModelWriteAlias(alias.value)) {
+                    aliases--;
+                }
+            }
+            return aliases == 0;
+        }
+
+        private void addIndex(final IndexMetaData imd) {
+            String name = imd.getIndex().getName();
+            if (prefixes.matches(name)) {
+                if (naming.isWriteAliasName(name)) {
+                    copy();
+                    writeIndices.add(name);
+                    appeared.add(name);
+                } else if (naming.isInitialIndex(name)) {
+                    copy();
+                    boolean hasWriteIndexAlias = hasWriteIndexAlias(imd);
+                    initialIndices.put(name, hasWriteIndexAlias);
+                    if (!hasWriteIndexAlias) {
+                        missingWriteAlias.add(name);
+                    }
+                }
+            }
+            for (ObjectCursor<String> alias : imd.getAliases().keys()) {
+                if (isDataModelWriteAlias(alias.value)) {
+                    copy();
+                    // Sets can be shared with the base snapshot, they are never modified in place
+                    Set<String> indices = writeAliases.get(alias.value);
+                    indices = indices == null ? new HashSet<>() : new HashSet<>(indices);
+                    indices.add(name);
+                    writeAliases.put(alias.value, indices);
+                    appeared.add(alias.value);
+                }
+            }
+        }
+
+        /**
+         * @param name name of removed index
+         * @param imd metadata the index was added with, can be null if it is not known
+         */
+        private void removeIndex(final String name, final IndexMetaData imd) {
+            if (writeIndices.contains(name) || initialIndices.containsKey(name)) {
+                copy();
+                writeIndices.remove(name);
+                initialIndices.remove(name);
+            }
+            if (imd != null) {
+                for (ObjectCursor<String> alias : imd.getAliases().keys()) {
+                    removeFromAlias(alias.value, name);
+                }
+            } else {
+                for (String alias : new ArrayList<>(writeAliases.keySet())) {
+                    removeFromAlias(alias, name);
+                }
+            }
+        }
+
+        private void removeFromAlias(final String alias, final String index) {
+            Set<String> indices = writeAliases.get(alias);
+            if (indices != null && indices.contains(index)) {
+                copy();
+                if (indices.size() == 1) {
+                    writeAliases.remove(alias);
+                } else {
+                    indices = new HashSet<>(indices);
+                    indices.remove(index);
+                    writeAliases.put(alias, indices);
+                }
+            }
+        }
+
+        private Snapshot build(final long clusterStateVersion, final MetaData metaData) {
+            return new Snapshot(clusterStateVersion, base.generation + 1, metaData, prefixes,
+                    writeAliases, writeIndices, initialIndices);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2021 Lukáš Vlček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsearch.ingest.openshift;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Node level counters of the plugin. There is exactly one instance per node, it is owned by the
+ * {@link OpenshiftIngestPlugin} and updated by all processor instances, by the reconciler and by the rollover manager.
+ *
+ * Counters are {@link LongAdder}s, updating them from many ingest threads at once does not contend.
+ * The values are read only when the stats are requested, see {@link OpenshiftStatsAction}.
+ */
+public final class OpenshiftStats {
+
+    // Documents sent to a write-alias that does not exist yet and redirected to the initial index
+    final LongAdder documentsRedirected = new LongAdder();
+    // Documents sent to an existing write-alias
+    final LongAdder documentsPassedThrough = new LongAdder();
+    // Documents that are not sent to a data model write-alias
+    final LongAdder documentsSkipped = new LongAdder();
+    // Documents sent to a write-alias name that is a concrete index
+    final LongAdder aliasesNotFound = new LongAdder();
+    // Documents sent to a write-alias name that is a concrete index and routed to the fallback index instead
+    final LongAdder writeIndexFallback = new LongAdder();
+    // Documents sent to a write-alias name that is a concrete index and tagged
+    final LongAdder writeIndexTagged = new LongAdder();
+    // Documents routed using the per thread cache of recently resolved write-aliases
+    final LongAdder resolvedCacheHits = new LongAdder();
+    final Histogram executeTime = new Histogram();
+
+    // Index aliases requests sent by the master
+    final LongAdder aliasesRequests = new LongAdder();
+    final LongAdder aliasesRequestsAcknowledged = new LongAdder();
+    final LongAdder aliasesRequestsFailed = new LongAdder();
+    // Failed requests by kind, see OpenshiftWriteAliasReconciler.Failure
+    final LongAdder aliasFailuresBenign = new LongAdder();
+    final LongAdder aliasFailuresRetryable = new LongAdder();
+    final LongAdder aliasFailuresFatal = new LongAdder();
+    // Requests held back to not flood the master
+    final LongAdder aliasesRequestsDelayed = new LongAdder();
+    final LongAdder aliasActions = new LongAdder();
+    final Histogram aliasesRequestTime = new Histogram();
+
+    // Periodic rollover checks done by the master and rollover requests they sent
+    final LongAdder rolloverChecks = new LongAdder();
+    final LongAdder rolloverRequests = new LongAdder();
+    final LongAdder rolledOver = new LongAdder();
+    final LongAdder rolloverRequestsFailed = new LongAdder();
+    final Histogram rolloverRequestTime = new Histogram();
+
+    /**
+     * @return processor stats
+     */
+    Map<String, Object> processorStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("redirected", documentsRedirected.sum());
+        stats.put("passed_through", documentsPassedThrough.sum());
+        stats.put("skipped", documentsSkipped.sum());
+        stats.put("aliases_not_found", aliasesNotFound.sum());
+        stats.put("write_index_fallback", writeIndexFallback.sum());
+        stats.put("write_index_tagged", writeIndexTagged.sum());
+        stats.put("resolved_cache_hits", resolvedCacheHits.sum());
+        stats.put("execute_time", executeTime.toMap());
+        return stats;
+    }
+
+    /**
+     * @return stats of index aliases requests sent by this node while it was the master
+     */
+    Map<String, Object> reconcilerStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("requests", aliasesRequests.sum());
+        stats.put("acknowledged", aliasesRequestsAcknowledged.sum());
+        stats.put("failed", aliasesRequestsFailed.sum());
+        stats.put("failed_benign", aliasFailuresBenign.sum());
+        stats.put("failed_retryable", aliasFailuresRetryable.sum());
+        stats.put("failed_fatal", aliasFailuresFatal.sum());
+        stats.put("delayed", aliasesRequestsDelayed.sum());
+        stats.put("alias_actions", aliasActions.sum());
+        stats.put("request_time", aliasesRequestTime.toMap());
+        return stats;
+    }
+
+    /**
+     * @return stats of rollover checks done by this node while it was the master
+     */
+    Map<String, Object> rolloverStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("checks", rolloverChecks.sum());
+        stats.put("requests", rolloverRequests.sum());
+        stats.put("rolled_over", rolledOver.sum());
+        stats.put("failed", rolloverRequestsFailed.sum());
+        stats.put("request_time", rolloverRequestTime.toMap());
+        return stats;
+    }
+
+    /**
+     * Latency histogram with power of two buckets in microseconds. Bucket {@code i} counts values
+     * less than {@code 2^i} microseconds that did not fit the previous bucket, the last bucket counts
+     * everything that did not fit any other.
+     */
+    static final class Histogram {
+
+        static final int BUCKETS = 32;
+
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sumNanos = new LongAdder();
+
+        Histogram() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(final long nanos) {
+            long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(0, nanos));
+            buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros))].increment();
+            count.increment();
+            sumNanos.add(nanos);
+        }
+
+        long getCount() {
+            return count.sum();
+        }
+
+        long getBucket(final int bucket) {
+            return buckets[bucket].sum();
+        }
+
+        /**
+         * Empty buckets are left out.
+         */
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("count", count.sum());
+            map.put("time_in_nanos", sumNanos.sum());
+            List<Object> list = new ArrayList<>();
+            for (int i = 0; i < BUCKETS; i++) {
+                long c = buckets[i].sum();
+                if (c > 0) {
+                    Map<String, Object> bucket = new LinkedHashMap<>();
+                    bucket.put("lt_micros", 1L << i);
+                    bucket.put("count", c);
+                    list.add(bucket);
+                }
+            }
+            map.put("buckets", list);
+            return map;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2021 Lukáš Vlček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsearch.ingest.openshift;
+
+import org.elasticsearch.action.Action;
+import org.elasticsearch.action.FailedNodeException;
+import org.elasticsearch.action.support.nodes.BaseNodeRequest;
+import org.elasticsearch.action.support.nodes.BaseNodeResponse;
+import org.elasticsearch.action.support.nodes.BaseNodesRequest;
+import org.elasticsearch.action.support.nodes.BaseNodesResponse;
+import org.elasticsearch.action.support.nodes.NodesOperationRequestBuilder;
+import org.elasticsearch.client.ElasticsearchClient;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ToXContentFragment;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects {@link OpenshiftStats} and the cluster state version the {@link OpenshiftRoutingTable} reflects
+ * from every node.
+ */
+public class OpenshiftStatsAction extends Action<OpenshiftStatsAction.Request, OpenshiftStatsAction.Response,
+        OpenshiftStatsAction.RequestBuilder> {
+
+    public static final OpenshiftStatsAction INSTANCE = new OpenshiftStatsAction();
+    public static final String NAME = "cluster:monitor/openshift/stats";
+
+    private OpenshiftStatsAction() {
+        super(NAME);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public Response newResponse() {
+        return new Response();
+    }
+
+    @Override
+    public RequestBuilder newRequestBuilder(ElasticsearchClient client) {
+        return new RequestBuilder(client);
+    }
+
+    public static class Request extends BaseNodesRequest<Request> {
+
+        public Request(String... nodesIds) {
+            super(nodesIds);
+        }
+    }
+
+    public static class NodeRequest extends BaseNodeRequest {
+
+        public NodeRequest() {
+        }
+
+        NodeRequest(String nodeId) {
+            super(nodeId);
+        }
+    }
+
+    public static class RequestBuilder extends NodesOperationRequestBuilder<Request, Response, RequestBuilder> {
+
+        RequestBuilder(ElasticsearchClient client) {
+            super(client, INSTANCE, new Request());
+        }
+    }
+
+    public static class Response extends BaseNodesResponse<NodeResponse> implements ToXContentFragment {
+
+        Response() {
+        }
+
+        Response(ClusterName clusterName, List<NodeResponse> nodes, List<FailedNodeException> failures) {
+            super(clusterName, nodes, failures);
+        }
+
+        @Override
+        protected List<NodeResponse> readNodesFrom(StreamInput in) throws IOException {
+            return in.readList(NodeResponse::readNodeResponse);
+        }
+
+        @Override
+        protected void writeNodesTo(StreamOutput out, List<NodeResponse> nodes) throws IOException {
+            out.writeStreamableList(nodes);
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.field("cluster_name", getClusterName().value());
+            builder.startObject("nodes");
+            for (NodeResponse node : getNodes()) {
+                builder.startObject(node.getNode().getId());
+                builder.field("name", node.getNode().getName());
+                node.toXContent(builder, params);
+                builder.endObject();
+            }
+            builder.endObject();
+            return builder;
+        }
+    }
+
+    public static class NodeResponse extends BaseNodeResponse implements ToXContentFragment {
+
+        // Unknown versions are reported as -1
+        private long clusterStateVersion;
+        private long reconciledClusterStateVersion;
+        private Map<String, Object> processor;
+        private Map<String, Object> pendingCache;
+        private Map<String, Object> reconciler;
+        private Map<String, Object> rollover;
+
+        NodeResponse() {
+        }
+
+        NodeResponse(DiscoveryNode node, long clusterStateVersion, long reconciledClusterStateVersion,
+                     Map<String, Object> processor, Map<String, Object> pendingCache, Map<String, Object> reconciler,
+                     Map<String, Object> rollover) {
+            super(node);
+            this.clusterStateVersion = Math.max(-1, clusterStateVersion);
+            this.reconciledClusterStateVersion = Math.max(-1, reconciledClusterStateVersion);
+            this.processor = processor;
+            this.pendingCache = pendingCache;
+            this.reconciler = reconciler;
+            this.rollover = rollover;
+        }
+
+        static NodeResponse readNodeResponse(StreamInput in) throws IOException {
+            NodeResponse response = new NodeResponse();
+            response.readFrom(in);
+            return response;
+        }
+
+        public long getClusterStateVersion() {
+            return clusterStateVersion;
+        }
+
+        public long getReconciledClusterStateVersion() {
+            return reconciledClusterStateVersion;
+        }
+
+        public Map<String, Object> getProcessor() {
+            return processor;
+        }
+
+        public Map<String, Object> getPendingCache() {
+            return pendingCache;
+        }
+
+        public Map<String, Object> getReconciler() {
+            return reconciler;
+        }
+
+        public Map<String, Object> getRollover() {
+            return rollover;
+        }
+
+        @Override
+        public void readFrom(StreamInput in) throws IOException {
+            super.readFrom(in);
+            clusterStateVersion = in.readLong();
+            reconciledClusterStateVersion = in.readLong();
+            processor = in.readMap();
+            pendingCache = in.readMap();
+            reconciler = in.readMap();
+            rollover = in.readMap();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            super.writeTo(out);
+            out.writeLong(clusterStateVersion);
+            out.writeLong(reconciledClusterStateVersion);
+            out.writeMap(processor);
+            out.writeMap(pendingCache);
+            out.writeMap(reconciler);
+            out.writeMap(rollover);
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.field("cluster_state_version", clusterStateVersion);
+            builder.field("reconciled_cluster_state_version", reconciledClusterStateVersion);
+            builder.field("processor", processor);
+            builder.field("pending_cache", pendingCache);
+            builder.field("reconciler", reconciler);
+            builder.field("rollover", rollover);
+            return builder;
+        }
+    }
+}
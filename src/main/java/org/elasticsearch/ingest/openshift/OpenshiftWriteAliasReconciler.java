@@ -0,0 +1,810 @@
+/*
+ * Copyright 2021 Lukáš Vlček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsearch.ingest.openshift;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.ElasticsearchSecurityException;
+import org.elasticsearch.ElasticsearchTimeoutException;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.ResourceAlreadyExistsException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest.AliasActions;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequestBuilder;
+import org.elasticsearch.action.support.master.AcknowledgedResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.LocalNodeMasterListener;
+import org.elasticsearch.cluster.NotMasterException;
+import org.elasticsearch.cluster.block.ClusterBlockException;
+import org.elasticsearch.cluster.metadata.ProcessClusterEventTimeoutException;
+import org.elasticsearch.common.Randomness;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.discovery.Discovery.FailedToCommitClusterStateException;
+import org.elasticsearch.discovery.MasterNotDiscoveredException;
+import org.elasticsearch.index.IndexNotFoundException;
+import org.elasticsearch.indices.InvalidAliasNameException;
+import org.elasticsearch.node.NodeClosedException;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.threadpool.ExecutorBuilder;
+import org.elasticsearch.threadpool.FixedExecutorBuilder;
+import org.elasticsearch.threadpool.Scheduler;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.ConnectTransportException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Adds missing write-aliases to data model initial indices. This is done on the master node only.
+ *
+ * The reconciler does not scan all indices on every cluster metadata change. While the local node is the master
+ * the {@link OpenshiftRoutingTable} notifies it about initial indices without write-alias as it applies the changes,
+ * such indices are kept in a bounded queue of pending work which is then processed. As a safety net all initial
+ * indices known to the routing table are checked when the local node is elected master and when the queue overflows.
+ *
+ * Aliases can still be missed, for example if the master fails after an initial index was created but
+ * before its write-alias was added. That is why the elected master also runs a periodic self-healing full sweep
+ * every {@link #FULL_SWEEP_INTERVAL_SETTING}. If the sweep finds nothing to do, the delay until the next one is
+ * doubled, up to {@link #FULL_SWEEP_MAX_INTERVAL_SETTING}.
+ *
+ * The work is not done on the cluster state applier thread. The cluster state listener only records that there
+ * is some work to do by calling {@link #schedule(long, boolean)} and the reconciliation runs on the plugin's own
+ * {@link #EXECUTOR}. There is never more than one reconciliation task waiting for execution, all cluster state
+ * changes recorded until it starts are handled by that single run (the latest state wins).
+ *
+ * When many namespaces start logging at once the master must not be flooded. Every request carries at most
+ * {@link #MAX_ACTIONS_PER_REQUEST_SETTING} alias actions and requests are sent at most
+ * {@link #MAX_REQUESTS_PER_SECOND_SETTING} times per second. The delay between requests grows with the number
+ * of tasks waiting in the master's queue once it exceeds {@link #PENDING_TASKS_THRESHOLD_SETTING}. Indices over
+ * the limits stay queued for the next request.
+ *
+ * Failed requests are classified, see {@link Failure}. The index aliases request is applied atomically, if the
+ * failure points at a particular index then only that action is dropped and the rest of the batch is sent again.
+ * Retryable failures are retried with jittered exponential backoff starting at {@link #RETRY_INITIAL_DELAY_SETTING}.
+ * Fatal failures are not retried until the next self-healing sweep, they are logged as errors and counted.
+ */
+final class OpenshiftWriteAliasReconciler implements LocalNodeMasterListener {
+
+    private static final Logger logger = LogManager.getLogger(OpenshiftWriteAliasReconciler.class);
+
+    static final String EXECUTOR = "openshift_reconcile";
+
+    static final Setting<TimeValue> FULL_SWEEP_INTERVAL_SETTING = Setting.timeSetting(
+            "openshift.ingest.reconcile.full_sweep_interval", TimeValue.timeValueMinutes(5), TimeValue.timeValueSeconds(1),
+            Setting.Property.NodeScope);
+
+    static final Setting<TimeValue> FULL_SWEEP_MAX_INTERVAL_SETTING = Setting.timeSetting(
+            "openshift.ingest.reconcile.full_sweep_max_interval", TimeValue.timeValueMinutes(30), TimeValue.timeValueSeconds(1),
+            Setting.Property.NodeScope);
+
+    static final Setting<Integer> MAX_PENDING_SETTING = Setting.intSetting(
+            "openshift.ingest.reconcile.max_pending", 10000, 1, Setting.Property.NodeScope);
+
+    static final Setting<Integer> MAX_IN_FLIGHT_REQUESTS_SETTING = Setting.intSetting(
+            "openshift.ingest.reconcile.max_in_flight_requests", 1, 1, Setting.Property.NodeScope);
+
+    static final Setting<Integer> MAX_ACTIONS_PER_REQUEST_SETTING = Setting.intSetting(
+            "openshift.ingest.reconcile.max_actions_per_request", 500, 1, Setting.Property.NodeScope);
+
+    static final Setting<Integer> MAX_REQUESTS_PER_SECOND_SETTING = Setting.intSetting(
+            "openshift.ingest.reconcile.max_requests_per_second", 10, 1, Setting.Property.NodeScope);
+
+    static final Setting<Integer> PENDING_TASKS_THRESHOLD_SETTING = Setting.intSetting(
+            "openshift.ingest.reconcile.pending_tasks_threshold", 100, 1, Setting.Property.NodeScope);
+
+    // No matter how busy the master is, requests are not delayed more than this
+    static final long MAX_PACING_DELAY_MILLIS = TimeValue.timeValueSeconds(30).millis();
+
+    static final Setting<TimeValue> RETRY_INITIAL_DELAY_SETTING = Setting.timeSetting(
+            "openshift.ingest.reconcile.retry_initial_delay", TimeValue.timeValueSeconds(1), TimeValue.timeValueMillis(1),
+            Setting.Property.NodeScope);
+
+    static final Setting<TimeValue> RETRY_MAX_DELAY_SETTING = Setting.timeSetting(
+            "openshift.ingest.reconcile.retry_max_delay", TimeValue.timeValueMinutes(5), TimeValue.timeValueMillis(1),
+            Setting.Property.NodeScope);
+
+    /**
+     * Where an initial index is in the reconciliation.
+     */
+    enum IndexStatus {
+        // Not known to the reconciler, either it has the write-alias or it was not reported yet
+        NONE,
+        // Waiting to be checked
+        PENDING,
+        // Checked, waiting for the next request
+        QUEUED,
+        IN_FLIGHT,
+        // Waiting for retry of a failed request
+        BACKING_OFF
+    }
+
+    /**
+     * What a failed index aliases request means for the initial indices it was sent for.
+     */
+    enum Failure {
+        // The alias exists already or the index was deleted, nothing to retry for the index the failure points at
+        BENIGN,
+        // The master is not available or too busy, the request can succeed later
+        RETRYABLE,
+        // Missing privileges or a block that needs manual intervention, retrying would only load the master
+        FATAL;
+
+        static Failure classify(final Exception e) {
+            Throwable cause = ExceptionsHelper.unwrapCause(e);
+            if (cause instanceof IndexNotFoundException || cause instanceof InvalidAliasNameException
+                    || cause instanceof ResourceAlreadyExistsException) {
+                return BENIGN;
+            }
+            if (cause instanceof IllegalArgumentException && cause.getMessage() != null
+                    && (cause.getMessage().contains("already exists") || cause.getMessage().contains("more than one write index"))) {
+                // Somebody else added the alias in the meantime
+                return BENIGN;
+            }
+            if (cause instanceof ElasticsearchSecurityException) {
+                return FATAL;
+            }
+            if (cause instanceof ClusterBlockException) {
+                return ((ClusterBlockException) cause).retryable() ? RETRYABLE : FATAL;
+            }
+            if (cause instanceof ElasticsearchTimeoutException || cause instanceof ProcessClusterEventTimeoutException
+                    || cause instanceof MasterNotDiscoveredException
+                    || cause instanceof NotMasterException || cause instanceof FailedToCommitClusterStateException
+                    || cause instanceof ConnectTransportException || cause instanceof NodeClosedException
+                    || cause instanceof EsRejectedExecutionException) {
+                return RETRYABLE;
+            }
+            RestStatus status = ExceptionsHelper.status(cause);
+            if (status == RestStatus.UNAUTHORIZED || status == RestStatus.FORBIDDEN) {
+                return FATAL;
+            }
+            // Anything unexpected is retried, the backoff keeps it from overloading the master
+            return RETRYABLE;
+        }
+    }
+
+    private final OpenshiftRoutingTable routingTable;
+    private final OpenshiftStats stats;
+    private final Client client;
+    private final ThreadPool threadPool;
+    private final LongSupplier relativeTimeInMillis;
+    private final IntSupplier masterPendingTasks;
+    private final long fullSweepIntervalMillis;
+    private final long fullSweepMaxIntervalMillis;
+    private final int maxPending;
+
+    // Initial indices that need to be checked, guarded by this
+    private final Set<String> pending = new LinkedHashSet<>();
+    private boolean overflow = false;
+
+    // Initial indices waiting to be sent with the next request, guarded by this
+    private final Set<String> nextBatch = new LinkedHashSet<>();
+    // Initial indices that are part of requests not completed yet, guarded by this
+    private final Set<String> inFlight = new HashSet<>();
+    private int inFlightRequests = 0;
+    private final int maxInFlightRequests;
+    private final int maxActionsPerRequest;
+
+    // Pacing of requests, guarded by this
+    private final long minRequestIntervalMillis;
+    private final int pendingTasksThreshold;
+    private long nextRequestMillis = Long.MIN_VALUE;
+    private boolean sendScheduled = false;
+
+    // Retries of failed requests, guarded by this
+    private final long retryInitialDelayMillis;
+    private final long retryMaxDelayMillis;
+    // Initial indices waiting for the backoff delay to elapse
+    private final Set<String> backingOff = new HashSet<>();
+    // Consecutive failures per initial index
+    private final Map<String, Integer> failures = new HashMap<>();
+    private volatile String lastFatalFailure;
+
+    // Reconciliation task scheduling
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final AtomicBoolean fullSweepRequested = new AtomicBoolean(false);
+    private final AtomicLong requestedVersion = new AtomicLong(Long.MIN_VALUE);
+    private volatile long reconciledVersion = Long.MIN_VALUE;
+
+    // Self-healing full sweep, runs only on the elected master
+    private volatile Scheduler.Cancellable selfHealing;
+    private long selfHealingDelayMillis;
+    private long nextSelfHealingMillis;
+
+    OpenshiftWriteAliasReconciler(final Settings settings, final OpenshiftRoutingTable routingTable, final OpenshiftStats stats,
+                                  final Client client, final ThreadPool threadPool, final LongSupplier relativeTimeInMillis,
+                                  final IntSupplier masterPendingTasks) {
+        this.routingTable = routingTable;
+        this.stats = stats;
+        this.client = client;
+        this.threadPool = threadPool;
+        this.relativeTimeInMillis = relativeTimeInMillis;
+        this.masterPendingTasks = masterPendingTasks;
+        this.fullSweepIntervalMillis = FULL_SWEEP_INTERVAL_SETTING.get(settings).millis();
+        this.fullSweepMaxIntervalMillis = Math.max(fullSweepIntervalMillis, FULL_SWEEP_MAX_INTERVAL_SETTING.get(settings).millis());
+        this.maxPending = MAX_PENDING_SETTING.get(settings);
+        this.maxInFlightRequests = MAX_IN_FLIGHT_REQUESTS_SETTING.get(settings);
+        this.maxActionsPerRequest = MAX_ACTIONS_PER_REQUEST_SETTING.get(settings);
+        this.minRequestIntervalMillis = Math.max(1, 1000 / MAX_REQUESTS_PER_SECOND_SETTING.get(settings));
+        this.pendingTasksThreshold = PENDING_TASKS_THRESHOLD_SETTING.get(settings);
+        this.retryInitialDelayMillis = RETRY_INITIAL_DELAY_SETTING.get(settings).millis();
+        this.retryMaxDelayMillis = Math.max(retryInitialDelayMillis, RETRY_MAX_DELAY_SETTING.get(settings).millis());
+        this.selfHealingDelayMillis = fullSweepIntervalMillis;
+    }
+
+    /**
+     * Called by the routing table for every initial index that was created or changed and has no write-alias.
+     */
+    synchronized void enqueue(final String index) {
+        if (pending.size() < maxPending) {
+            pending.add(index);
+        } else if (!pending.contains(index)) {
+            // Whatever does not fit will be found by the full sweep
+            overflow = true;
+        }
+    }
+
+    /**
+     * The local node is not the master, nothing needs to be kept. Requests in flight are let to complete.
+     */
+    synchronized void clear() {
+        pending.clear();
+        nextBatch.clear();
+        backingOff.clear();
+        failures.clear();
+        overflow = false;
+    }
+
+    /**
+     * Take the pending work.
+     *
+     * @param fullSweep if true then all initial indices known to the routing table are checked
+     * @return Names of initial indices that have no write-alias.
+     */
+    synchronized List<String> collect(boolean fullSweep) {
+        if (overflow) {
+            fullSweep = true;
+        }
+
+        Collection<String> candidates;
+        if (fullSweep) {
+            logger.trace("Checking all initial indices for missing write-alias");
+            candidates = routingTable.getInitialIndicesWithoutWriteAlias();
+            overflow = false;
+        } else {
+            candidates = pending;
+        }
+
+        List<String> indices = new ArrayList<>(candidates.size());
+        for (String index : candidates) {
+            // The index could have been deleted or got the write-alias in the meantime
+            if (routingTable.isMissingWriteAlias(index)) {
+                indices.add(index);
+            }
+        }
+        pending.clear();
+        return indices;
+    }
+
+    static ExecutorBuilder<?> executorBuilder(final Settings settings) {
+        // Single thread is enough, there is only ever one reconciliation task waiting in the queue.
+        // Periodic rollover checks of the OpenshiftRolloverManager run here as well.
+        return new FixedExecutorBuilder(settings, EXECUTOR, 1, 16, "openshift.ingest.reconcile.thread_pool");
+    }
+
+    /**
+     * Record that the cluster state of given version needs to be reconciled and make sure the reconciliation
+     * task is going to run. This is cheap and it is meant to be called from the cluster state applier thread.
+     *
+     * @param version version of the cluster state
+     * @param fullSweep if true then all initial indices known to the routing table are checked
+     */
+    void schedule(final long version, final boolean fullSweep) {
+        requestedVersion.accumulateAndGet(version, Math::max);
+        if (fullSweep) {
+            fullSweepRequested.set(true);
+        }
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                threadPool.executor(EXECUTOR).execute(new AbstractRunnable() {
+                    @Override
+                    protected void doRun() {
+                        // Clear the flag first, changes recorded from now on need another run
+                        scheduled.set(false);
+                        long version = requestedVersion.get();
+                        reconcile(fullSweepRequested.getAndSet(false));
+                        reconciledVersion = version;
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                        logger.warn("Failed to reconcile write aliases", e);
+                    }
+
+                    @Override
+                    public void onRejection(Exception e) {
+                        // The executor is shutting down, or the queue is full
+                        scheduled.set(false);
+                        logger.debug("Reconciliation of write aliases was rejected", e);
+                    }
+                });
+            } catch (EsRejectedExecutionException e) {
+                scheduled.set(false);
+                logger.debug("Reconciliation of write aliases was rejected", e);
+            }
+        }
+    }
+
+    @Override
+    public void onMaster() {
+        routingTable.setMissingWriteAliasConsumer(this::enqueue);
+        synchronized (this) {
+            selfHealingDelayMillis = fullSweepIntervalMillis;
+            nextSelfHealingMillis = relativeTimeInMillis.getAsLong() + selfHealingDelayMillis;
+        }
+        // A periodic task that is rejected is never scheduled again, the generic pool does not reject tasks
+        selfHealing = threadPool.scheduleWithFixedDelay(this::scheduleSelfHeal,
+                TimeValue.timeValueMillis(fullSweepIntervalMillis), ThreadPool.Names.GENERIC);
+        logger.debug("Self-healing of write aliases started");
+    }
+
+    @Override
+    public void offMaster() {
+        // Other nodes do not add write-aliases, there is no point in collecting the work
+        routingTable.setMissingWriteAliasConsumer(index -> {});
+        Scheduler.Cancellable cancellable = selfHealing;
+        if (cancellable != null) {
+            cancellable.cancel();
+            selfHealing = null;
+            logger.debug("Self-healing of write aliases stopped");
+        }
+    }
+
+    @Override
+    public String executorName() {
+        return ThreadPool.Names.SAME;
+    }
+
+    /**
+     * The sweep itself runs on the plugin's executor. If it is rejected, it is tried again on the next tick.
+     */
+    private void scheduleSelfHeal() {
+        try {
+            threadPool.executor(EXECUTOR).execute(new AbstractRunnable() {
+                @Override
+                protected void doRun() {
+                    selfHeal();
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    logger.warn("Self-healing of write aliases failed", e);
+                }
+
+                @Override
+                public void onRejection(Exception e) {
+                    logger.debug("Self-healing of write aliases was rejected", e);
+                }
+            });
+        } catch (EsRejectedExecutionException e) {
+            logger.debug("Self-healing of write aliases was rejected", e);
+        }
+    }
+
+    /**
+     * Periodic full sweep. It runs every {@link #FULL_SWEEP_INTERVAL_SETTING} but it skips the work
+     * until the current backoff delay elapses.
+     */
+    void selfHeal() {
+        long now = relativeTimeInMillis.getAsLong();
+        synchronized (this) {
+            if (now < nextSelfHealingMillis) {
+                return;
+            }
+        }
+        int found = 0;
+        try {
+            found = reconcile(true);
+            if (found > 0) {
+                logger.info("Self-healing found {} initial indices without write alias", found);
+            }
+        } catch (Exception e) {
+            logger.warn("Self-healing of write aliases failed", e);
+        } finally {
+            synchronized (this) {
+                selfHealingDelayMillis = found > 0
+                        ? fullSweepIntervalMillis
+                        : Math.min(selfHealingDelayMillis * 2, fullSweepMaxIntervalMillis);
+                nextSelfHealingMillis = now + selfHealingDelayMillis;
+            }
+        }
+    }
+
+    synchronized long getSelfHealingDelayMillis() {
+        return selfHealingDelayMillis;
+    }
+
+    /**
+     * @return version of the latest cluster state that was reconciled
+     */
+    long getReconciledVersion() {
+        return reconciledVersion;
+    }
+
+    /**
+     * Send the index aliases request for pending initial indices.
+     *
+     * At most {@link #MAX_IN_FLIGHT_REQUESTS_SETTING} requests are sent at the same time. Indices found while
+     * the requests are in flight are merged into the next batch which is sent as soon as any request completes
+     * and the pacing delay elapses. Indices that are part of a request in flight are never requested again until
+     * that request completes.
+     *
+     * @param fullSweep if true then all initial indices known to the routing table are checked
+     * @return number of indices that were found to be missing the write-alias and are not in flight yet
+     */
+    int reconcile(boolean fullSweep) {
+        List<String> indices = collect(fullSweep);
+        int found = 0;
+        synchronized (this) {
+            for (String index : indices) {
+                // Indices waiting for retry are sent once the backoff delay elapses
+                if (!inFlight.contains(index) && !backingOff.contains(index)) {
+                    nextBatch.add(index);
+                    found++;
+                }
+            }
+        }
+        maybeSendNextBatch();
+        return found;
+    }
+
+    private void maybeSendNextBatch() {
+        final IndicesAliasesRequest iar;
+        final List<String> indices;
+        synchronized (this) {
+            if (nextBatch.isEmpty() || inFlightRequests >= maxInFlightRequests || sendScheduled) {
+                return;
+            }
+            long now = relativeTimeInMillis.getAsLong();
+            if (now < nextRequestMillis) {
+                scheduleNextBatch(nextRequestMillis - now);
+                return;
+            }
+
+            IndicesAliasesRequestBuilder iarb = client.admin().indices().prepareAliases();
+            indices = new ArrayList<>(Math.min(nextBatch.size(), maxActionsPerRequest));
+            Iterator<String> iterator = nextBatch.iterator();
+            while (iterator.hasNext() && indices.size() < maxActionsPerRequest) {
+                String index = iterator.next();
+                iterator.remove();
+
+                String writeAlias = routingTable.getNaming().writeAliasName(index);
+                // Initial indices that were already rolled-over will not have write alias. We need to skip them.
+                // In other words the writeAlias already exists (perhaps pointed to "-000002" index or older).
+                // The index could have also got the write-alias while waiting for the next batch.
+                if (!writeAlias.isEmpty() && routingTable.isMissingWriteAlias(index)
+                        && routingTable.resolve(writeAlias) == OpenshiftRoutingTable.Target.NONE) {
+                    iarb.addAliasAction(AliasActions.add()
+                            .index(index)
+                            .alias(writeAlias)
+                            .writeIndex(true));
+                    indices.add(index);
+                    logger.trace("Prepared write index alias {} request for index {}", writeAlias, index);
+                }
+            }
+
+            iar = iarb.request();
+            if (iar.getAliasActions().isEmpty()) {
+                return;
+            }
+            inFlight.addAll(indices);
+            inFlightRequests++;
+            nextRequestMillis = now + getPacingDelayMillis();
+        }
+
+        stats.aliasesRequests.increment();
+        stats.aliasActions.add(indices.size());
+        final long start = System.nanoTime();
+
+        client.admin().indices().aliases(iar, new ActionListener<AcknowledgedResponse>() {
+            @Override
+            public void onResponse(AcknowledgedResponse acknowledgedResponse) {
+                stats.aliasesRequestTime.record(System.nanoTime() - start);
+                if (acknowledgedResponse.isAcknowledged()) {
+                    stats.aliasesRequestsAcknowledged.increment();
+                }
+                logger.debug("Write aliases added for the following indices: {}", indices);
+                completed(indices);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                stats.aliasesRequestTime.record(System.nanoTime() - start);
+                stats.aliasesRequestsFailed.increment();
+                failed(indices, e);
+            }
+        });
+    }
+
+    private void failed(final List<String> indices, final Exception e) {
+        Failure failure = Failure.classify(e);
+        // The failure can point at the one action that caused the whole request to fail
+        String culprit = null;
+        Throwable cause = ExceptionsHelper.unwrapCause(e);
+        if (cause instanceof ElasticsearchException && ((ElasticsearchException) cause).getIndex() != null) {
+            culprit = ((ElasticsearchException) cause).getIndex().getName();
+            if (!indices.contains(culprit)) {
+                culprit = null;
+            }
+        }
+
+        long delayMillis = -1;
+        synchronized (this) {
+            inFlight.removeAll(indices);
+            inFlightRequests--;
+            switch (failure) {
+                case BENIGN:
+                    stats.aliasFailuresBenign.increment();
+                    if (culprit != null) {
+                        // The other actions did not fail, they are sent again right away
+                        failures.remove(culprit);
+                        for (String index : indices) {
+                            if (!index.equals(culprit) && !backingOff.contains(index)) {
+                                nextBatch.add(index);
+                            }
+                        }
+                    } else {
+                        // Wait until the change shows up in the routing table, then only what is still missing is sent
+                        delayMillis = backOff(indices);
+                    }
+                    break;
+                case RETRYABLE:
+                    stats.aliasFailuresRetryable.increment();
+                    delayMillis = backOff(indices);
+                    break;
+                default:
+                    stats.aliasFailuresFatal.increment();
+                    lastFatalFailure = cause.toString();
+                    failures.keySet().removeAll(indices);
+            }
+        }
+
+        if (failure == Failure.FATAL) {
+            logger.error(new ParameterizedMessage("Adding write aliases failed and will not be retried until the next "
+                    + "self-healing check, the following indices are missing write-alias: {}", indices), e);
+        } else if (failure == Failure.BENIGN) {
+            logger.debug(new ParameterizedMessage("Adding write aliases failed for index [{}], the following indices "
+                    + "are checked again: {}", culprit, indices), e);
+        } else {
+            logger.warn(new ParameterizedMessage("Error occurred when adding write aliases for the following indices, "
+                    + "retrying in [{}ms]: {}", delayMillis, indices), e);
+        }
+        if (delayMillis >= 0) {
+            scheduleRetry(indices, delayMillis);
+        }
+        maybeSendNextBatch();
+    }
+
+    /**
+     * @return jittered delay that doubles with every consecutive failure of any of the indices
+     */
+    private synchronized long backOff(final List<String> indices) {
+        int attempt = 0;
+        for (String index : indices) {
+            attempt = Math.max(attempt, failures.merge(index, 1, Integer::sum));
+        }
+        backingOff.addAll(indices);
+        return getRetryDelayMillis(attempt, Randomness.get().nextDouble());
+    }
+
+    /**
+     * @param attempt number of consecutive failures, starting with 1
+     * @param jitter random number in [0, 1)
+     * @return delay between a half and the full exponential delay
+     */
+    long getRetryDelayMillis(final int attempt, final double jitter) {
+        long delay = retryMaxDelayMillis;
+        if (attempt < 31 && retryInitialDelayMillis << (attempt - 1) < retryMaxDelayMillis) {
+            delay = retryInitialDelayMillis << (attempt - 1);
+        }
+        return delay / 2 + (long) (jitter * (delay - delay / 2));
+    }
+
+    private void scheduleRetry(final List<String> indices, final long delayMillis) {
+        try {
+            threadPool.schedule(new AbstractRunnable() {
+                @Override
+                protected void doRun() {
+                    synchronized (OpenshiftWriteAliasReconciler.this) {
+                        for (String index : indices) {
+                            // Unless the local node stopped being the master in the meantime
+                            if (backingOff.remove(index)) {
+                                nextBatch.add(index);
+                            }
+                        }
+                    }
+                    maybeSendNextBatch();
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    logger.warn("Failed to retry write aliases request", e);
+                }
+
+                @Override
+                public void onRejection(Exception e) {
+                    retryRejected(indices, e);
+                }
+            }, TimeValue.timeValueMillis(delayMillis), EXECUTOR);
+        } catch (EsRejectedExecutionException e) {
+            retryRejected(indices, e);
+        }
+    }
+
+    /**
+     * The indices must not stay backing off, {@link #reconcile(boolean)} would skip them for good,
+     * the next full sweep finds them again.
+     */
+    private void retryRejected(final List<String> indices, final Exception e) {
+        synchronized (this) {
+            backingOff.removeAll(indices);
+        }
+        logger.debug("Retry of write aliases request was rejected", e);
+    }
+
+    /**
+     * The next batch is sent once the delay elapses, there is never more than one such task scheduled.
+     */
+    private synchronized void scheduleNextBatch(final long delayMillis) {
+        sendScheduled = true;
+        stats.aliasesRequestsDelayed.increment();
+        try {
+            threadPool.schedule(new AbstractRunnable() {
+                @Override
+                protected void doRun() {
+                    synchronized (OpenshiftWriteAliasReconciler.this) {
+                        sendScheduled = false;
+                    }
+                    maybeSendNextBatch();
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    logger.warn("Failed to send write aliases request", e);
+                }
+
+                @Override
+                public void onRejection(Exception e) {
+                    sendRejected(e);
+                }
+            }, TimeValue.timeValueMillis(delayMillis), EXECUTOR);
+        } catch (EsRejectedExecutionException e) {
+            sendRejected(e);
+        }
+    }
+
+    /**
+     * Nothing would be sent again while the flag is set, the batch is sent by the next reconciliation instead.
+     */
+    private synchronized void sendRejected(final Exception e) {
+        sendScheduled = false;
+        logger.debug("Sending of write aliases request was rejected", e);
+    }
+
+    /**
+     * @return minimum delay until the next request, it grows with the number of tasks waiting in the master's queue
+     */
+    long getPacingDelayMillis() {
+        int pendingTasks = masterPendingTasks.getAsInt();
+        if (pendingTasks <= pendingTasksThreshold) {
+            return minRequestIntervalMillis;
+        }
+        return Math.min(minRequestIntervalMillis * pendingTasks / pendingTasksThreshold, MAX_PACING_DELAY_MILLIS);
+    }
+
+    private void completed(final List<String> indices) {
+        synchronized (this) {
+            inFlight.removeAll(indices);
+            inFlightRequests--;
+            failures.keySet().removeAll(indices);
+        }
+        maybeSendNextBatch();
+    }
+
+    synchronized boolean isInFlight(final String index) {
+        return inFlight.contains(index);
+    }
+
+    /**
+     * @param index initial index
+     * @return where the index is in the reconciliation, the latest stage wins
+     */
+    synchronized IndexStatus getStatus(final String index) {
+        if (inFlight.contains(index)) {
+            return IndexStatus.IN_FLIGHT;
+        }
+        if (backingOff.contains(index)) {
+            return IndexStatus.BACKING_OFF;
+        }
+        if (nextBatch.contains(index)) {
+            return IndexStatus.QUEUED;
+        }
+        if (pending.contains(index)) {
+            return IndexStatus.PENDING;
+        }
+        return IndexStatus.NONE;
+    }
+
+    /**
+     * @return number of consecutive failed requests of the initial index
+     */
+    synchronized int getFailureCount(final String index) {
+        return failures.getOrDefault(index, 0);
+    }
+
+    /**
+     * @return number of initial indices waiting to be checked
+     */
+    synchronized int getPendingCount() {
+        return pending.size() + nextBatch.size();
+    }
+
+    /**
+     * @return number of initial indices that were checked and wait for the next request
+     */
+    synchronized int getQueuedCount() {
+        return nextBatch.size();
+    }
+
+    /**
+     * @return number of initial indices waiting for retry of a failed request
+     */
+    synchronized int getBackingOffCount() {
+        return backingOff.size();
+    }
+
+    /**
+     * @return description of the last failure that is not retried, or null if there was none
+     */
+    String getLastFatalFailure() {
+        return lastFatalFailure;
+    }
+
+    /**
+     * @return number of initial indices that are part of requests not completed yet
+     */
+    synchronized int getInFlightCount() {
+        return inFlight.size();
+    }
+}
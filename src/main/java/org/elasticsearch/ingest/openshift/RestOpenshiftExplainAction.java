@@ -0,0 +1,69 @@
+/*
+ * Copyright 2021 Lukáš Vlček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsearch.ingest.openshift;
+
+import org.elasticsearch.client.node.NodeClient;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.action.RestToXContentListener;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * GET _openshift/explain/{alias} and GET|POST _openshift/explain with {@code {"aliases": [...]}} body
+ */
+public class RestOpenshiftExplainAction extends BaseRestHandler {
+
+    public RestOpenshiftExplainAction(Settings settings, RestController controller) {
+        super(settings);
+        controller.registerHandler(RestRequest.Method.GET, "/_openshift/explain", this);
+        controller.registerHandler(RestRequest.Method.POST, "/_openshift/explain", this);
+        controller.registerHandler(RestRequest.Method.GET, "/_openshift/explain/{alias}", this);
+    }
+
+    @Override
+    public String getName() {
+        return "openshift_explain_action";
+    }
+
+    @Override
+    protected RestChannelConsumer prepareRequest(RestRequest request, NodeClient client) throws IOException {
+        List<String> aliases = new ArrayList<>(Arrays.asList(Strings.splitStringByCommaToArray(request.param("alias"))));
+        if (request.hasContentOrSourceParam()) {
+            try (XContentParser parser = request.contentOrSourceParamParser()) {
+                Object value = parser.map().get("aliases");
+                if (!(value instanceof List)) {
+                    throw new IllegalArgumentException("[aliases] must be a list of write-alias names");
+                }
+                for (Object alias : (List<?>) value) {
+                    aliases.add(String.valueOf(alias));
+                }
+            }
+        }
+        OpenshiftExplainAction.Request explainRequest = new OpenshiftExplainAction.Request(aliases.toArray(new String[0]));
+        explainRequest.local(request.paramAsBoolean("local", explainRequest.local()));
+        explainRequest.masterNodeTimeout(request.paramAsTime("master_timeout", explainRequest.masterNodeTimeout()));
+        return channel -> client.execute(OpenshiftExplainAction.INSTANCE, explainRequest, new RestToXContentListener<>(channel));
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2021 Lukáš Vlček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsearch.ingest.openshift;
+
+import org.elasticsearch.client.node.NodeClient;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.action.RestActions;
+
+import java.io.IOException;
+
+/**
+ * GET _openshift/stats and GET _openshift/stats/{node_id}
+ */
+public class RestOpenshiftStatsAction extends BaseRestHandler {
+
+    public RestOpenshiftStatsAction(Settings settings, RestController controller) {
+        super(settings);
+        controller.registerHandler(RestRequest.Method.GET, "/_openshift/stats", this);
+        controller.registerHandler(RestRequest.Method.GET, "/_openshift/stats/{node_id}", this);
+    }
+
+    @Override
+    public String getName() {
+        return "openshift_stats_action";
+    }
+
+    @Override
+    protected RestChannelConsumer prepareRequest(RestRequest request, NodeClient client) throws IOException {
+        String[] nodesIds = Strings.splitStringByCommaToArray(request.param("node_id"));
+        OpenshiftStatsAction.Request statsRequest = new OpenshiftStatsAction.Request(nodesIds);
+        statsRequest.timeout(request.param("timeout"));
+        return channel -> client.execute(OpenshiftStatsAction.INSTANCE, statsRequest,
+                new RestActions.NodesResponseRestListener<>(channel));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2021 Lukáš Vlček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsearch.ingest.openshift;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.master.TransportMasterNodeReadAction;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.block.ClusterBlockException;
+import org.elasticsearch.cluster.block.ClusterBlockLevel;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TransportOpenshiftExplainAction extends TransportMasterNodeReadAction<OpenshiftExplainAction.Request,
+        OpenshiftExplainAction.Response> {
+
+    private final OpenshiftRoutingTable routingTable;
+    private final OpenshiftWriteAliasReconciler reconciler;
+
+    @Inject
+    public TransportOpenshiftExplainAction(Settings settings, TransportService transportService, ClusterService clusterService,
+                                           ThreadPool threadPool, ActionFilters actionFilters,
+                                           IndexNameExpressionResolver indexNameExpressionResolver,
+                                           OpenshiftRoutingTable routingTable, OpenshiftWriteAliasReconciler reconciler) {
+        super(settings, OpenshiftExplainAction.NAME, transportService, clusterService, threadPool, actionFilters,
+                indexNameExpressionResolver, OpenshiftExplainAction.Request::new);
+        this.routingTable = routingTable;
+        this.reconciler = reconciler;
+    }
+
+    @Override
+    protected String executor() {
+        return ThreadPool.Names.MANAGEMENT;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    protected OpenshiftExplainAction.Response newResponse() {
+        return new OpenshiftExplainAction.Response();
+    }
+
+    @Override
+    protected ClusterBlockException checkBlock(OpenshiftExplainAction.Request request, ClusterState state) {
+        return state.blocks().globalBlockedException(ClusterBlockLevel.METADATA_READ);
+    }
+
+    @Override
+    protected void masterOperation(OpenshiftExplainAction.Request request, ClusterState state,
+                                   ActionListener<OpenshiftExplainAction.Response> listener) {
+        listener.onResponse(explain(request.aliases(), routingTable, reconciler, threadPool.absoluteTimeInMillis(),
+                clusterService.localNode(), state.nodes().isLocalNodeElectedMaster()));
+    }
+
+    /**
+     * Status of the reconciler is looked up only for redirects to initial indices that exist without write-alias.
+     */
+    static OpenshiftExplainAction.Response explain(final String[] aliases, final OpenshiftRoutingTable routingTable,
+                                                   final OpenshiftWriteAliasReconciler reconciler, final long nowMillis,
+                                                   final DiscoveryNode localNode, final boolean electedMaster) {
+        OpenshiftRoutingTable.Snapshot snapshot = routingTable.snapshot();
+        List<OpenshiftExplainAction.Explanation> explanations = new ArrayList<>(aliases.length);
+        for (String alias : aliases) {
+            OpenshiftExplainAction.Explanation explanation =
+                    OpenshiftIndexProcessor.explain(alias, routingTable, snapshot, nowMillis);
+            if (explanation.getDecision() == OpenshiftExplainAction.Decision.REDIRECT) {
+                // Not necessarily the index documents are redirected to, it could have been named on an earlier day
+                String index = snapshot.getInitialIndexWithoutWriteAlias(alias, routingTable.getNaming());
+                if (index != null) {
+                    explanation.missingWriteAlias(index, reconciler.getStatus(index), reconciler.getFailureCount(index));
+                }
+            }
+            explanations.add(explanation);
+        }
+        return new OpenshiftExplainAction.Response(localNode, electedMaster, snapshot.getClusterStateVersion(),
+                snapshot.getGeneration(), reconciler.getReconciledVersion(), explanations);
+    }
+}
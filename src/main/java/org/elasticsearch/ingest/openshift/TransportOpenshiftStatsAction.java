@@ -0,0 +1,102 @@
+/*
+ * Copyright 2021 Lukáš Vlček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsearch.ingest.openshift;
+
+import org.elasticsearch.action.FailedNodeException;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.nodes.TransportNodesAction;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TransportOpenshiftStatsAction extends TransportNodesAction<OpenshiftStatsAction.Request,
+        OpenshiftStatsAction.Response, OpenshiftStatsAction.NodeRequest, OpenshiftStatsAction.NodeResponse> {
+
+    private final OpenshiftStats stats;
+    private final OpenshiftRoutingTable routingTable;
+    private final OpenshiftWriteAliasReconciler reconciler;
+    private final OpenshiftRolloverManager rolloverManager;
+
+    @Inject
+    public TransportOpenshiftStatsAction(Settings settings, ThreadPool threadPool, ClusterService clusterService,
+                                         TransportService transportService, ActionFilters actionFilters,
+                                         IndexNameExpressionResolver indexNameExpressionResolver,
+                                         OpenshiftStats stats, OpenshiftRoutingTable routingTable,
+                                         OpenshiftWriteAliasReconciler reconciler,
+                                         OpenshiftRolloverManager rolloverManager) {
+        super(settings, OpenshiftStatsAction.NAME, threadPool, clusterService, transportService, actionFilters,
+                indexNameExpressionResolver, OpenshiftStatsAction.Request::new, OpenshiftStatsAction.NodeRequest::new,
+                ThreadPool.Names.MANAGEMENT, OpenshiftStatsAction.NodeResponse.class);
+        this.stats = stats;
+        this.routingTable = routingTable;
+        this.reconciler = reconciler;
+        this.rolloverManager = rolloverManager;
+    }
+
+    @Override
+    protected OpenshiftStatsAction.Response newResponse(OpenshiftStatsAction.Request request,
+                                                        List<OpenshiftStatsAction.NodeResponse> nodes,
+                                                        List<FailedNodeException> failures) {
+        return new OpenshiftStatsAction.Response(clusterService.getClusterName(), nodes, failures);
+    }
+
+    @Override
+    protected OpenshiftStatsAction.NodeRequest newNodeRequest(String nodeId, OpenshiftStatsAction.Request request) {
+        return new OpenshiftStatsAction.NodeRequest(nodeId);
+    }
+
+    @Override
+    protected OpenshiftStatsAction.NodeResponse newNodeResponse() {
+        return new OpenshiftStatsAction.NodeResponse();
+    }
+
+    @Override
+    protected OpenshiftStatsAction.NodeResponse nodeOperation(OpenshiftStatsAction.NodeRequest request) {
+        Map<String, Object> pendingCacheStats = new LinkedHashMap<>();
+        OpenshiftPendingIndexCache pendingIndexCache = routingTable.getPendingIndexCache();
+        pendingCacheStats.put("enabled", pendingIndexCache != null);
+        if (pendingIndexCache != null) {
+            pendingCacheStats.put("size", pendingIndexCache.size());
+            pendingCacheStats.put("hits", pendingIndexCache.getHits());
+            pendingCacheStats.put("misses", pendingIndexCache.getMisses());
+            pendingCacheStats.put("evictions", pendingIndexCache.getEvictions());
+        }
+
+        Map<String, Object> reconcilerStats = stats.reconcilerStats();
+        reconcilerStats.put("pending", reconciler.getPendingCount());
+        reconcilerStats.put("queued", reconciler.getQueuedCount());
+        reconcilerStats.put("in_flight", reconciler.getInFlightCount());
+        reconcilerStats.put("backing_off", reconciler.getBackingOffCount());
+        if (reconciler.getLastFatalFailure() != null) {
+            reconcilerStats.put("last_fatal_failure", reconciler.getLastFatalFailure());
+        }
+
+        Map<String, Object> rolloverStats = stats.rolloverStats();
+        rolloverStats.put("queued", rolloverManager.getQueuedCount());
+        rolloverStats.put("in_flight", rolloverManager.getInFlightCount());
+
+        return new OpenshiftStatsAction.NodeResponse(clusterService.localNode(), routingTable.getClusterStateVersion(),
+                reconciler.getReconciledVersion(), stats.processorStats(), pendingCacheStats, reconcilerStats, rolloverStats);
+    }
+}
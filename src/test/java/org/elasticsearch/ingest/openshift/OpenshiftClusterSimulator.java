@@ -0,0 +1,368 @@
+/*
+ * Copyright 2021 Lukáš Vlček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsearch.ingest.openshift;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.action.Action;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.AliasMetaData;
+import org.elasticsearch.cluster.metadata.AliasOrIndex;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.transport.TransportAddress;
+import org.elasticsearch.test.client.NoOpClient;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Simulates the metadata of a large logging cluster for tests.
+ *
+ * The initial state holds the requested number of indices, most of them belong to data model schemas with one
+ * or more rolled over generations, the rest are indices that are not part of the data model. Every call of
+ * {@link #next()} applies one random change the way the cluster would do it (index created by a redirected document,
+ * write-alias added by the master, rollover, deletion of old generations or whole schemas, mapping updates) and
+ * returns the corresponding {@link ClusterChangedEvent}. The local node is always the elected master.
+ *
+ * Expected answers are derived from the full alias and index lookup of the current metadata.
+ */
+final class OpenshiftClusterSimulator {
+
+    enum Change {
+        // Document redirected to the initial index of a new schema, the index was auto-created without alias
+        CREATE_SCHEMA,
+        // The master added the missing write-alias
+        ADD_WRITE_ALIAS,
+        // New generation gets the write flag, the previous one keeps the alias without it
+        ROLLOVER,
+        // Curation deleted the oldest generation
+        DELETE_OLDEST,
+        DELETE_SCHEMA,
+        // Changes that do not touch routing at all
+        MAPPING_UPDATE,
+        CREATE_OTHER_INDEX
+    }
+
+    private static final String[] PREFIXES = {"app-", "infra-", "audit-"};
+
+    private static final DiscoveryNodes NODES;
+
+    static {
+        DiscoveryNode node = new DiscoveryNode("node_0", new TransportAddress(InetAddress.getLoopbackAddress(), 9300),
+                Version.CURRENT);
+        NODES = DiscoveryNodes.builder().add(node).localNodeId(node.getId()).masterNodeId(node.getId()).build();
+    }
+
+    private static final class Schema {
+
+        private final String name;
+        private int oldest = 1;
+        private int latest = 1;
+        private boolean writeAlias;
+
+        private Schema(final String name, final boolean writeAlias) {
+            this.name = name;
+            this.writeAlias = writeAlias;
+        }
+
+        private String index(final int generation) {
+            return String.format(Locale.ROOT, "%s-%06d", name, generation);
+        }
+
+        private String writeAlias() {
+            return name + "-write";
+        }
+    }
+
+    private final Random random;
+    private final List<Schema> schemas = new ArrayList<>();
+    private final Map<String, Schema> schemasByName = new HashMap<>();
+    private int nextSchema = 0;
+    private ClusterState state = ClusterState.EMPTY_STATE;
+    private Change lastChange;
+
+    /**
+     * @param indices approximate number of indices of the initial state
+     */
+    OpenshiftClusterSimulator(final Random random, final int indices) {
+        this.random = random;
+        MetaData.Builder mdBuilder = MetaData.builder();
+        int count = 0;
+        while (count < indices) {
+            if (random.nextInt(100) == 0) {
+                String index = "logs-" + count;
+                mdBuilder.put(createIndexMetaData(index), false);
+                count++;
+                continue;
+            }
+            // Few schemas are still waiting for the write-alias
+            Schema schema = addSchema(random.nextInt(100) != 0);
+            schema.latest = schema.writeAlias ? 1 + random.nextInt(3) : 1;
+            for (int g = schema.oldest; g <= schema.latest; g++) {
+                mdBuilder.put(generation(schema, g), false);
+                count++;
+            }
+        }
+        state = clusterState(1, mdBuilder);
+    }
+
+    private Schema addSchema(final boolean writeAlias) {
+        String name = PREFIXES[nextSchema % PREFIXES.length] + "schema" + nextSchema;
+        nextSchema++;
+        Schema schema = new Schema(name, writeAlias);
+        schemas.add(schema);
+        schemasByName.put(name, schema);
+        return schema;
+    }
+
+    private void removeSchema(final int i) {
+        Schema schema = schemas.get(i);
+        // Order does not matter, swap with the last one
+        schemas.set(i, schemas.get(schemas.size() - 1));
+        schemas.remove(schemas.size() - 1);
+        schemasByName.remove(schema.name);
+    }
+
+    private IndexMetaData generation(final Schema schema, final int generation) {
+        IndexMetaData.Builder imBuilder = indexMetaDataBuilder(schema.index(generation));
+        if (schema.writeAlias) {
+            imBuilder.putAlias(AliasMetaData.builder(schema.writeAlias()).writeIndex(generation == schema.latest).build());
+        }
+        return imBuilder.build();
+    }
+
+    ClusterState state() {
+        return state;
+    }
+
+    Change lastChange() {
+        return lastChange;
+    }
+
+    /**
+     * Apply random change.
+     */
+    ClusterChangedEvent next() {
+        Change change = Change.values()[random.nextInt(Change.values().length)];
+        MetaData.Builder mdBuilder = MetaData.builder(state.metaData());
+        apply(change, mdBuilder);
+        return advance(change, mdBuilder);
+    }
+
+    /**
+     * Add write-aliases the way the master does it.
+     *
+     * @param indices initial indices, those that were deleted or have the write-alias already are skipped
+     */
+    ClusterChangedEvent addWriteAliases(final Collection<String> indices) {
+        MetaData.Builder mdBuilder = MetaData.builder(state.metaData());
+        for (String index : indices) {
+            Schema schema = schemasByName.get(index.substring(0, index.lastIndexOf('-')));
+            if (schema != null && !schema.writeAlias && state.metaData().hasIndex(index)) {
+                schema.writeAlias = true;
+                mdBuilder.put(generation(schema, schema.latest), true);
+            }
+        }
+        return advance(Change.ADD_WRITE_ALIAS, mdBuilder);
+    }
+
+    private ClusterChangedEvent advance(final Change change, final MetaData.Builder mdBuilder) {
+        ClusterState previous = state;
+        state = clusterState(previous.version() + 1, mdBuilder);
+        lastChange = change;
+        return new ClusterChangedEvent(change.name(), state, previous);
+    }
+
+    private void apply(final Change change, final MetaData.Builder mdBuilder) {
+        Schema schema = schemas.isEmpty() ? null : schemas.get(random.nextInt(schemas.size()));
+        switch (change) {
+            case CREATE_SCHEMA:
+                mdBuilder.put(generation(addSchema(false), 1), true);
+                break;
+            case ADD_WRITE_ALIAS:
+                if (schema != null && !schema.writeAlias) {
+                    schema.writeAlias = true;
+                    mdBuilder.put(generation(schema, schema.latest), true);
+                }
+                break;
+            case ROLLOVER:
+                if (schema != null && schema.writeAlias) {
+                    schema.latest++;
+                    mdBuilder.put(generation(schema, schema.latest - 1), true);
+                    mdBuilder.put(generation(schema, schema.latest), true);
+                }
+                break;
+            case DELETE_OLDEST:
+                if (schema != null && schema.oldest < schema.latest) {
+                    mdBuilder.remove(schema.index(schema.oldest));
+                    schema.oldest++;
+                }
+                break;
+            case DELETE_SCHEMA:
+                if (schema != null) {
+                    for (int g = schema.oldest; g <= schema.latest; g++) {
+                        mdBuilder.remove(schema.index(g));
+                    }
+                    removeSchema(schemas.indexOf(schema));
+                }
+                break;
+            case MAPPING_UPDATE:
+                if (schema != null) {
+                    IndexMetaData imd = state.metaData().index(schema.index(schema.latest));
+                    mdBuilder.put(IndexMetaData.builder(imd).mappingVersion(imd.getMappingVersion() + 1).build(), true);
+                }
+                break;
+            default:
+                String index = "logs-other-" + state.version();
+                mdBuilder.put(createIndexMetaData(index), true);
+        }
+    }
+
+    /**
+     * @return random write-aliases of existing and deleted schemas and some names that never existed
+     */
+    List<String> sampleWriteAliases(final int count) {
+        List<String> aliases = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int n = random.nextInt(10);
+            if (n == 0 || schemas.isEmpty()) {
+                aliases.add(PREFIXES[random.nextInt(PREFIXES.length)] + "unknown" + random.nextInt(nextSchema + 1) + "-write");
+            } else if (n == 1) {
+                aliases.add(PREFIXES[random.nextInt(PREFIXES.length)] + "schema" + random.nextInt(nextSchema) + "-write");
+            } else {
+                aliases.add(schemas.get(random.nextInt(schemas.size())).writeAlias());
+            }
+        }
+        return aliases;
+    }
+
+    /**
+     * @return what the name resolves to according to the full alias and index lookup
+     */
+    OpenshiftRoutingTable.Target expectedTarget(final String name) {
+        AliasOrIndex aliasOrIndex = state.metaData().getAliasAndIndexLookup().get(name);
+        if (aliasOrIndex == null || !OpenshiftIndicesUtil.hasDataModelPrefix(name)) {
+            return OpenshiftRoutingTable.Target.NONE;
+        }
+        return aliasOrIndex.isAlias() ? OpenshiftRoutingTable.Target.ALIAS : OpenshiftRoutingTable.Target.INDEX;
+    }
+
+    List<String> expectedInitialIndicesWithoutWriteAlias() {
+        return OpenshiftIndicesUtil.getInitialIndicesWithoutWriteAlias(state.metaData().getAliasAndIndexLookup());
+    }
+
+    int indexCount() {
+        return state.metaData().indices().size();
+    }
+
+    int schemaCount() {
+        return schemas.size();
+    }
+
+    private static ClusterState clusterState(final long version, final MetaData.Builder metaData) {
+        return ClusterState.builder(ClusterName.DEFAULT).version(version).nodes(NODES).metaData(metaData).build();
+    }
+
+    /**
+     * @param index index name
+     * @param writeAliases aliases of the index with the write flag
+     */
+    static IndexMetaData createIndexMetaData(String index, String ... writeAliases) {
+        IndexMetaData.Builder imBuilder = indexMetaDataBuilder(index);
+        for (String alias : writeAliases) {
+            imBuilder.putAlias(AliasMetaData.builder(alias).writeIndex(true).build());
+        }
+        return imBuilder.build();
+    }
+
+    /**
+     * @param index index name
+     * @param creationDate creation date of the index
+     * @param alias alias of the index
+     * @param writeIndex whether the index is the write index of the alias
+     */
+    static IndexMetaData createIndexMetaData(String index, long creationDate, String alias, boolean writeIndex) {
+        return indexMetaDataBuilder(index)
+                .creationDate(creationDate)
+                .putAlias(AliasMetaData.builder(alias).writeIndex(writeIndex).build())
+                .build();
+    }
+
+    /**
+     * Applies the metadata to the routing table the way the cluster state applier would.
+     *
+     * @return the new cluster state, its version follows the previous one
+     */
+    static ClusterState apply(OpenshiftRoutingTable routingTable, ClusterState previous, MetaData.Builder metaData) {
+        ClusterState state = ClusterState.builder(ClusterName.DEFAULT).version(previous.version() + 1).metaData(metaData).build();
+        routingTable.clusterChanged(new ClusterChangedEvent("test", state, previous));
+        return state;
+    }
+
+    private static IndexMetaData.Builder indexMetaDataBuilder(String index) {
+        return IndexMetaData.builder(index)
+                .settings(Settings.builder().put("index.version.created", Version.CURRENT))
+                .numberOfShards(1)
+                .numberOfReplicas(0);
+    }
+
+    /**
+     * Keeps all requests and lets the test decide when they are completed.
+     */
+    static class CapturingClient extends NoOpClient {
+
+        final List<ActionRequest> requests = new ArrayList<>();
+        final List<ActionListener<?>> listeners = new ArrayList<>();
+
+        CapturingClient(String testName) {
+            super(testName);
+        }
+
+        @Override
+        protected <Request extends ActionRequest, Response extends ActionResponse,
+                RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder>>
+        void doExecute(Action<Request, Response, RequestBuilder> action, Request request, ActionListener<Response> listener) {
+            // The listener first, the test may look for it as soon as the request is there
+            listeners.add(listener);
+            requests.add(request);
+        }
+
+        @SuppressWarnings("unchecked")
+        <Response extends ActionResponse> void respond(int request, Response response) {
+            ((ActionListener<Response>) listeners.get(request)).onResponse(response);
+        }
+
+        void fail(int request, Exception e) {
+            listeners.get(request).onFailure(e);
+        }
+    }
+}
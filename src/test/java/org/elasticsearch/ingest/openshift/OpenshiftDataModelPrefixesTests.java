@@ -0,0 +1,77 @@
+/*
+ * Copyright 2021 Lukáš Vlček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsearch.ingest.openshift;
+
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class OpenshiftDataModelPrefixesTests extends ESTestCase {
+
+    public void testDefaultPrefixes() {
+        assertEquals(OpenshiftDataModelPrefixes.DEFAULT_PREFIXES,
+                OpenshiftDataModelPrefixes.PREFIXES_SETTING.get(Settings.EMPTY));
+        OpenshiftDataModelPrefixes prefixes = OpenshiftDataModelPrefixes.DEFAULT;
+        assertTrue(prefixes.matches("app-foo-write"));
+        assertTrue(prefixes.matches("infra-"));
+        assertTrue(prefixes.matches("audit-foo-000001"));
+        assertFalse(prefixes.matches("app"));
+        assertFalse(prefixes.matches("aud"));
+        assertFalse(prefixes.matches(".kibana"));
+        assertFalse(prefixes.matches(""));
+    }
+
+    public void testPrefixOfPrefix() {
+        OpenshiftDataModelPrefixes prefixes = new OpenshiftDataModelPrefixes(Arrays.asList("team-a-", "team-"));
+        assertTrue(prefixes.matches("team-b-foo"));
+        assertTrue(prefixes.matches("team-a-foo"));
+        assertFalse(prefixes.matches("team"));
+    }
+
+    public void testNoPrefixes() {
+        assertFalse(new OpenshiftDataModelPrefixes(Collections.emptyList()).matches("app-foo-write"));
+    }
+
+    public void testEmptyPrefixIsRejected() {
+        Settings settings = Settings.builder()
+                .putList(OpenshiftDataModelPrefixes.PREFIXES_SETTING.getKey(), "app-", "").build();
+        expectThrows(IllegalArgumentException.class, () -> OpenshiftDataModelPrefixes.PREFIXES_SETTING.get(settings));
+    }
+
+    /**
+     * The trie must give the same answers as checking every prefix one by one.
+     */
+    public void testMatchesAnyPrefix() {
+        List<String> list = new ArrayList<>();
+        int size = randomIntBetween(1, 50);
+        for (int i = 0; i < size; i++) {
+            list.add(randomAlphaOfLengthBetween(1, 4) + randomFrom("", "-"));
+        }
+        OpenshiftDataModelPrefixes prefixes = new OpenshiftDataModelPrefixes(list);
+        for (int i = 0; i < 1000; i++) {
+            String name = randomBoolean()
+                    ? randomFrom(list) + randomAlphaOfLengthBetween(0, 5)
+                    : randomAlphaOfLengthBetween(0, 8);
+            boolean expected = list.stream().anyMatch(name::startsWith);
+            assertEquals(name, expected, prefixes.matches(name));
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2021 Lukáš Vlček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsearch.ingest.openshift;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.elasticsearch.ingest.IngestDocument;
+import org.elasticsearch.test.ESTestCase;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.elasticsearch.ingest.openshift.OpenshiftClusterSimulator.createIndexMetaData;
+
+public class OpenshiftExplainActionTests extends ESTestCase {
+
+    private static final String[] ALIASES = {"app-foo-write", "app-bar-write", "app-baz-write", "app-qux-write",
+            ".kibana-write", "app-foo-000001"};
+
+    private OpenshiftRoutingTable routingTable;
+    private OpenshiftWriteAliasReconciler reconciler;
+    private OpenshiftStats stats;
+    private DiscoveryNode node;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        routingTable = new OpenshiftRoutingTable(new OpenshiftPendingIndexCache(Settings.EMPTY));
+        stats = new OpenshiftStats();
+        reconciler = new OpenshiftWriteAliasReconciler(Settings.EMPTY, routingTable, stats, null, null, () -> 0, () -> 0);
+        routingTable.setMissingWriteAliasConsumer(reconciler::enqueue);
+        node = new DiscoveryNode("node_0", buildNewFakeTransportAddress(), Version.CURRENT);
+        ClusterState state = ClusterState.builder(ClusterName.DEFAULT).version(7).metaData(MetaData.builder()
+                .put(createIndexMetaData("app-foo-000001", "app-foo-write"), false)
+                .put(createIndexMetaData("app-bar-write"), false)
+                .put(createIndexMetaData("app-baz-000001"), false)).build();
+        routingTable.clusterChanged(new ClusterChangedEvent("test", state, ClusterState.EMPTY_STATE));
+    }
+
+    public void testExplain() {
+        OpenshiftExplainAction.Response response = TransportOpenshiftExplainAction.explain(ALIASES, routingTable, reconciler,
+                0, node, true);
+        assertEquals(7, response.getClusterStateVersion());
+        assertEquals(routingTable.getGeneration(), response.getRoutingGeneration());
+        assertTrue(response.isElectedMaster());
+        List<OpenshiftExplainAction.Explanation> explanations = response.getExplanations();
+        assertEquals(ALIASES.length, explanations.size());
+
+        assertExplanation(explanations.get(0), "app-foo-write", OpenshiftExplainAction.Decision.PASS_THROUGH, "app-foo-000001");
+        assertExplanation(explanations.get(1), "app-bar-write", OpenshiftExplainAction.Decision.WRITE_INDEX, "app-bar-write");
+        // Initial index exists, the reconciler was told about it
+        assertExplanation(explanations.get(2), "app-baz-write", OpenshiftExplainAction.Decision.REDIRECT, "app-baz-000001");
+        assertTrue(explanations.get(2).isMissingWriteAlias());
+        assertEquals("pending", explanations.get(2).getReconcilerStatus());
+        assertEquals(0, explanations.get(2).getFailures());
+        // New schema, the initial index does not exist yet
+        assertExplanation(explanations.get(3), "app-qux-write", OpenshiftExplainAction.Decision.REDIRECT, "app-qux-000001");
+        assertFalse(explanations.get(3).isPending());
+        assertFalse(explanations.get(3).isMissingWriteAlias());
+        assertExplanation(explanations.get(4), ".kibana-write", OpenshiftExplainAction.Decision.SKIP, null);
+        assertExplanation(explanations.get(5), "app-foo-000001", OpenshiftExplainAction.Decision.SKIP, null);
+
+        // Dry run does not touch the caches and counters
+        assertEquals(0, routingTable.getPendingIndexCache().size());
+        assertEquals(0, routingTable.getPendingIndexCache().getHits());
+        assertEquals(0, stats.documentsRedirected.sum());
+
+        // Once a document was redirected, the redirect is remembered
+        OpenshiftIndexProcessor processor = new OpenshiftIndexProcessor(randomAlphaOfLength(5), routingTable, stats,
+                new OpenshiftResolvedAliasCache(Settings.EMPTY));
+        processor.execute(new IngestDocument("app-qux-write", "_doc", "1", null, null, null, null, new HashMap<>()));
+        OpenshiftExplainAction.Explanation explanation = TransportOpenshiftExplainAction.explain(
+                new String[]{"app-qux-write"}, routingTable, reconciler, 0, node, true).getExplanations().get(0);
+        assertExplanation(explanation, "app-qux-write", OpenshiftExplainAction.Decision.REDIRECT, "app-qux-000001");
+        assertTrue(explanation.isPending());
+        assertEquals(0, routingTable.getPendingIndexCache().getHits());
+    }
+
+    public void testMissingWriteAliasOfEarlierDay() {
+        OpenshiftIndexNaming naming = new OpenshiftIndexNaming(OpenshiftIndexNaming.Style.DATED, 6);
+        routingTable = new OpenshiftRoutingTable(new OpenshiftPendingIndexCache(Settings.EMPTY, naming), naming);
+        reconciler = new OpenshiftWriteAliasReconciler(Settings.EMPTY, routingTable, stats, null, null, () -> 0, () -> 0);
+        routingTable.setMissingWriteAliasConsumer(reconciler::enqueue);
+        ClusterState state = ClusterState.builder(ClusterName.DEFAULT).version(1).metaData(MetaData.builder()
+                .put(createIndexMetaData("app-baz-2021.03.01-000001"), false)).build();
+        routingTable.clusterChanged(new ClusterChangedEvent("test", state, ClusterState.EMPTY_STATE));
+
+        // Documents would go to the index of today, the index of the earlier day is still missing its write-alias
+        long nowMillis = TimeUnit.DAYS.toMillis(LocalDate.of(2021, 3, 5).toEpochDay());
+        OpenshiftExplainAction.Explanation explanation = TransportOpenshiftExplainAction.explain(
+                new String[]{"app-baz-write"}, routingTable, reconciler, nowMillis, node, true).getExplanations().get(0);
+        assertExplanation(explanation, "app-baz-write", OpenshiftExplainAction.Decision.REDIRECT, "app-baz-2021.03.05-000001");
+        assertTrue(explanation.isMissingWriteAlias());
+        assertEquals("app-baz-2021.03.01-000001", explanation.getInitialIndex());
+        assertEquals("pending", explanation.getReconcilerStatus());
+    }
+
+    public void testSerialization() throws Exception {
+        OpenshiftExplainAction.Response response = TransportOpenshiftExplainAction.explain(ALIASES, routingTable, reconciler,
+                0, node, false);
+
+        BytesStreamOutput out = new BytesStreamOutput();
+        response.writeTo(out);
+        OpenshiftExplainAction.Response read = new OpenshiftExplainAction.Response();
+        try (StreamInput in = out.bytes().streamInput()) {
+            read.readFrom(in);
+        }
+        assertEquals(node, read.getNode());
+        assertFalse(read.isElectedMaster());
+        assertEquals(7, read.getClusterStateVersion());
+        assertEquals(-1, read.getReconciledClusterStateVersion());
+        assertEquals(ALIASES.length, read.getExplanations().size());
+        for (int i = 0; i < ALIASES.length; i++) {
+            OpenshiftExplainAction.Explanation expected = response.getExplanations().get(i);
+            OpenshiftExplainAction.Explanation actual = read.getExplanations().get(i);
+            assertExplanation(actual, expected.getAlias(), expected.getDecision(), expected.getIndex());
+            assertEquals(expected.isMissingWriteAlias(), actual.isMissingWriteAlias());
+            assertEquals(expected.getInitialIndex(), actual.getInitialIndex());
+            assertEquals(expected.getReconcilerStatus(), actual.getReconcilerStatus());
+        }
+
+        XContentBuilder builder = read.toXContent(JsonXContent.contentBuilder(), ToXContent.EMPTY_PARAMS);
+        String json = Strings.toString(builder);
+        assertTrue(json, json.contains("{\"alias\":\"app-baz-write\",\"decision\":\"redirect\",\"index\":\"app-baz-000001\","
+                + "\"pending\":false,\"missing_write_alias\":true,"
+                + "\"reconciler\":{\"index\":\"app-baz-000001\",\"status\":\"pending\",\"failures\":0}}"));
+        assertTrue(json, json.contains("{\"alias\":\".kibana-write\",\"decision\":\"skip\"}"));
+    }
+
+    public void testValidation() {
+        assertNotNull(new OpenshiftExplainAction.Request().validate());
+        assertNull(new OpenshiftExplainAction.Request("app-foo-write").validate());
+    }
+
+    private static void assertExplanation(OpenshiftExplainAction.Explanation explanation, String alias,
+                                          OpenshiftExplainAction.Decision decision, String index) {
+        assertEquals(alias, explanation.getAlias());
+        assertEquals(alias, decision, explanation.getDecision());
+        assertEquals(alias, index, explanation.getIndex());
+    }
+}
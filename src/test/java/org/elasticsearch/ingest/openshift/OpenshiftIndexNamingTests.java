@@ -0,0 +1,124 @@
+/*
+ * Copyright 2021 Lukáš Vlček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsearch.ingest.openshift;
+
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.ingest.IngestDocument;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.Collections;
+import java.util.HashMap;
+
+import static org.elasticsearch.ingest.openshift.OpenshiftClusterSimulator.createIndexMetaData;
+
+public class OpenshiftIndexNamingTests extends ESTestCase {
+
+    // 2021-03-01T12:00:00Z
+    private static final long NOW = 1614600000000L;
+
+    public void testDefaultNaming() {
+        assertSame(OpenshiftIndexNaming.DEFAULT, OpenshiftIndexNaming.create(Settings.EMPTY));
+        OpenshiftIndexNaming naming = OpenshiftIndexNaming.DEFAULT;
+        assertEquals(1, naming.parseGeneration("app-foo-000001"));
+        assertEquals(42, naming.parseGeneration("app-foo-000042"));
+        // Rollover keeps adding digits
+        assertEquals(1000000, naming.parseGeneration("app-foo-1000000"));
+        assertEquals(-1, naming.parseGeneration("app-foo-00001"));
+        assertEquals(-1, naming.parseGeneration("app-foo000001"));
+        assertEquals(-1, naming.parseGeneration("app-foo-write"));
+        assertEquals(-1, naming.parseGeneration("000001"));
+        assertEquals(-1, naming.parseGeneration(""));
+
+        assertTrue(naming.isInitialIndex("app-foo-000001"));
+        assertFalse(naming.isInitialIndex("app-foo-000002"));
+
+        assertEquals("app-foo-000001", naming.initialIndexName("app-foo-write", NOW));
+        assertEquals("app-foo", naming.initialIndexName("app-foo", NOW));
+        assertEquals("app-foo-write", naming.writeAliasName("app-foo-000001"));
+        assertEquals("app-foo-write", naming.writeAliasName("app-foo-000123"));
+        assertEquals("app-foo", naming.writeAliasName("app-foo"));
+        assertEquals("app-foo-000002", naming.nextIndexName("app-foo-000001", NOW));
+        assertEquals("app-foo-1000000", naming.nextIndexName("app-foo-999999", NOW));
+        assertNull(naming.nextIndexName("app-foo", NOW));
+    }
+
+    public void testPadding() {
+        OpenshiftIndexNaming naming = OpenshiftIndexNaming.create(Settings.builder()
+                .put(OpenshiftIndexNaming.PADDING_SETTING.getKey(), 2).build());
+        assertEquals(2, naming.getPadding());
+        assertEquals("app-foo-01", naming.initialIndexName("app-foo-write", NOW));
+        assertTrue(naming.isInitialIndex("app-foo-01"));
+        // Elasticsearch rollover pads to 6 digits
+        assertEquals(2, naming.parseGeneration("app-foo-000002"));
+        assertEquals(-1, naming.parseGeneration("app-foo-1"));
+        assertEquals("app-foo-10", naming.nextIndexName("app-foo-09", NOW));
+    }
+
+    public void testDatedNaming() {
+        OpenshiftIndexNaming naming = OpenshiftIndexNaming.create(Settings.builder()
+                .put(OpenshiftIndexNaming.STYLE_SETTING.getKey(), "dated").build());
+        assertEquals(OpenshiftIndexNaming.Style.DATED, naming.getStyle());
+        assertEquals("app-foo-2021.03.01-000001", naming.initialIndexName("app-foo-write", NOW));
+        assertEquals(1, naming.parseGeneration("app-foo-2021.03.01-000001"));
+        assertEquals(7, naming.parseGeneration("app-foo-2020.12.31-000007"));
+        assertEquals(-1, naming.parseGeneration("app-foo-000001"));
+        assertEquals(-1, naming.parseGeneration("app-foo-2021-03-01-000001"));
+        assertEquals(-1, naming.parseGeneration("2021.03.01-000001"));
+        assertEquals("app-foo-write", naming.writeAliasName("app-foo-2020.12.31-000007"));
+        // Generation continues, the date is the day of the rollover
+        assertEquals("app-foo-2021.03.02-000008",
+                naming.nextIndexName("app-foo-2020.12.31-000007", NOW + 86400000L));
+        assertEquals("app-foo-2021.03.01-000002", naming.nextIndexName("app-foo-2021.03.01-000001", NOW));
+    }
+
+    public void testInvalidStyle() {
+        Settings settings = Settings.builder()
+                .put(OpenshiftIndexNaming.STYLE_SETTING.getKey(), "weekly").build();
+        expectThrows(IllegalArgumentException.class, () -> OpenshiftIndexNaming.STYLE_SETTING.get(settings));
+    }
+
+    /**
+     * Routing table, pending index cache and the processor share the naming.
+     */
+    public void testRoutingWithDatedNaming() {
+        OpenshiftIndexNaming naming = new OpenshiftIndexNaming(OpenshiftIndexNaming.Style.DATED, 6);
+        OpenshiftRoutingTable routingTable = new OpenshiftRoutingTable(
+                randomBoolean() ? new OpenshiftPendingIndexCache(Settings.EMPTY, naming) : null, naming);
+        ClusterState state = ClusterState.builder(ClusterName.DEFAULT).version(1).metaData(MetaData.builder()
+                .put(createIndexMetaData("app-foo-2021.01.01-000001"), false)
+                .put(createIndexMetaData("app-bar-2021.02.01-000002", "app-bar-write"), false)
+                .put(createIndexMetaData("app-baz-000001"), false)).build();
+        routingTable.clusterChanged(new ClusterChangedEvent("test", state, ClusterState.EMPTY_STATE));
+
+        assertEquals(Collections.singletonList("app-foo-2021.01.01-000001"), routingTable.getInitialIndicesWithoutWriteAlias());
+        assertEquals(OpenshiftIndicesUtil.getInitialIndicesWithoutWriteAlias(state.metaData().getAliasAndIndexLookup(), naming),
+                routingTable.getInitialIndicesWithoutWriteAlias());
+        assertEquals(OpenshiftRoutingTable.Target.ALIAS, routingTable.resolve("app-bar-write"));
+
+        OpenshiftStats stats = new OpenshiftStats();
+        OpenshiftIndexProcessor processor = new OpenshiftIndexProcessor(randomAlphaOfLength(5), routingTable, stats,
+                new OpenshiftResolvedAliasCache(Settings.EMPTY));
+        IngestDocument document = new IngestDocument("app-qux-write", "_doc", "1", null, null, null, null, new HashMap<>());
+        String index = processor.execute(document).getFieldValue("_index", String.class);
+        assertTrue(index, naming.isInitialIndex(index));
+        assertEquals("app-qux-write", naming.writeAliasName(index));
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright 2021 Lukáš Vlček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsearch.ingest.openshift;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.ingest.IngestDocument;
+import org.elasticsearch.rest.action.admin.indices.AliasesNotFoundException;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.elasticsearch.ingest.openshift.OpenshiftClusterSimulator.createIndexMetaData;
+import static org.hamcrest.Matchers.containsString;
+
+public class OpenshiftIndexProcessorTests extends ESTestCase {
+
+    private OpenshiftRoutingTable routingTable;
+    private OpenshiftStats stats;
+    private OpenshiftResolvedAliasCache resolvedAliasCache;
+    private ClusterState state;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        stats = new OpenshiftStats();
+        resolvedAliasCache = new OpenshiftResolvedAliasCache(Settings.builder()
+                .put(OpenshiftResolvedAliasCache.ENABLED_SETTING.getKey(), randomBoolean()).build());
+        routingTable = new OpenshiftRoutingTable(randomBoolean() ? new OpenshiftPendingIndexCache(Settings.EMPTY) : null);
+        state = ClusterState.builder(ClusterName.DEFAULT).version(1).metaData(MetaData.builder()
+                .put(createIndexMetaData("app-foo-000001", "app-foo-write"), false)
+                .put(createIndexMetaData("app-bar-write"), false)).build();
+        routingTable.clusterChanged(new ClusterChangedEvent("test", state, ClusterState.EMPTY_STATE));
+    }
+
+    public void testRedirectToInitialIndex() {
+        assertEquals("app-baz-000001", execute("app-baz-write"));
+        assertEquals("infra-baz-000001", execute("infra-baz-write"));
+    }
+
+    public void testPassThrough() {
+        // Existing write-alias
+        assertEquals("app-foo-write", execute("app-foo-write"));
+        // Not part of the data model
+        assertEquals("foo-write", execute("foo-write"));
+        assertEquals(".kibana", execute(".kibana"));
+        // Not a write-alias
+        assertEquals("app-baz", execute("app-baz"));
+    }
+
+    public void testWriteAliasIsIndex() {
+        expectThrows(AliasesNotFoundException.class, () -> execute("app-bar-write"));
+    }
+
+    public void testWriteIndexFailureIsCached() {
+        resolvedAliasCache = new OpenshiftResolvedAliasCache(Settings.EMPTY);
+        AliasesNotFoundException first = expectThrows(AliasesNotFoundException.class, () -> execute("app-bar-write"));
+        assertSame(first, expectThrows(AliasesNotFoundException.class, () -> execute("app-bar-write")));
+
+        // Any change of the routing table invalidates it
+        ClusterState newState = ClusterState.builder(state).incrementVersion().metaData(MetaData.builder(state.metaData())
+                .put(createIndexMetaData("app-baz-000001", "app-baz-write"), false)).build();
+        routingTable.clusterChanged(new ClusterChangedEvent("test", newState, state));
+        assertNotSame(first, expectThrows(AliasesNotFoundException.class, () -> execute("app-bar-write")));
+        assertEquals(3, stats.aliasesNotFound.sum());
+    }
+
+    public void testWriteIndexFallback() {
+        OpenshiftIndexProcessor processor = new OpenshiftIndexProcessor(randomAlphaOfLength(5), routingTable, stats,
+                resolvedAliasCache, OpenshiftIndexProcessor.WriteIndexHandling.FALLBACK, "app-fallback", null);
+        for (int i = 0; i < 3; i++) {
+            IngestDocument document = new IngestDocument("app-bar-write", "_doc", "1", null, null, null, null, new HashMap<>());
+            assertEquals("app-fallback", processor.execute(document).getFieldValue("_index", String.class));
+        }
+        assertEquals(3, stats.writeIndexFallback.sum());
+        assertEquals(0, stats.aliasesNotFound.sum());
+
+        // Other documents are not affected
+        IngestDocument document = new IngestDocument("app-foo-write", "_doc", "1", null, null, null, null, new HashMap<>());
+        assertEquals("app-foo-write", processor.execute(document).getFieldValue("_index", String.class));
+    }
+
+    public void testWriteIndexTag() {
+        OpenshiftIndexProcessor processor = new OpenshiftIndexProcessor(randomAlphaOfLength(5), routingTable, stats,
+                resolvedAliasCache, OpenshiftIndexProcessor.WriteIndexHandling.TAG, null, "misrouted");
+        IngestDocument document = new IngestDocument("app-bar-write", "_doc", "1", null, null, null, null, new HashMap<>());
+        processor.execute(document);
+        assertEquals("app-bar-write", document.getFieldValue("_index", String.class));
+        assertTrue(document.getFieldValue("misrouted", Boolean.class));
+        assertEquals(1, stats.writeIndexTagged.sum());
+
+        document = new IngestDocument("app-foo-write", "_doc", "1", null, null, null, null, new HashMap<>());
+        processor.execute(document);
+        assertFalse(document.hasField("misrouted"));
+    }
+
+    public void testFactoryOptions() throws Exception {
+        OpenshiftIndexProcessor.Factory factory = new OpenshiftIndexProcessor.Factory(routingTable, stats, resolvedAliasCache);
+        OpenshiftIndexProcessor processor = (OpenshiftIndexProcessor) factory.create(null, "tag", new HashMap<>());
+        assertEquals(OpenshiftIndexProcessor.WriteIndexHandling.FAIL, processor.getWriteIndexHandling());
+
+        Map<String, Object> config = new HashMap<>();
+        config.put(OpenshiftIndexProcessor.ON_WRITE_INDEX_OPTION, "tag");
+        processor = (OpenshiftIndexProcessor) factory.create(null, "tag", config);
+        assertEquals(OpenshiftIndexProcessor.WriteIndexHandling.TAG, processor.getWriteIndexHandling());
+        assertTrue(config.isEmpty());
+
+        config.put(OpenshiftIndexProcessor.ON_WRITE_INDEX_OPTION, "fallback");
+        ElasticsearchException e = expectThrows(ElasticsearchException.class, () -> factory.create(null, "tag", config));
+        assertThat(e.getMessage(), containsString("fallback_index"));
+
+        config.clear();
+        config.put(OpenshiftIndexProcessor.ON_WRITE_INDEX_OPTION, "drop");
+        e = expectThrows(ElasticsearchException.class, () -> factory.create(null, "tag", config));
+        assertThat(e.getMessage(), containsString("must be one of [fail, fallback, tag]"));
+    }
+
+    public void testPendingIndexCache() {
+        // Documents would be routed by the per thread cache otherwise
+        resolvedAliasCache = new OpenshiftResolvedAliasCache(Settings.builder()
+                .put(OpenshiftResolvedAliasCache.ENABLED_SETTING.getKey(), false).build());
+        OpenshiftPendingIndexCache cache = new OpenshiftPendingIndexCache(Settings.EMPTY);
+        routingTable = new OpenshiftRoutingTable(cache);
+        routingTable.clusterChanged(new ClusterChangedEvent("test", state, ClusterState.EMPTY_STATE));
+
+        assertEquals("app-baz-000001", execute("app-baz-write"));
+        assertEquals("app-baz-000001", execute("app-baz-write"));
+        assertEquals("app-baz-000001", execute("app-baz-write"));
+        assertEquals(1, cache.getMisses());
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.size());
+
+        // Existing write-aliases are not cached
+        assertEquals("app-foo-write", execute("app-foo-write"));
+        assertEquals(1, cache.size());
+
+        // The entry expires when the write-alias appears
+        ClusterState newState = ClusterState.builder(state).incrementVersion().metaData(MetaData.builder(state.metaData())
+                .put(createIndexMetaData("app-baz-000001", "app-baz-write"), false)).build();
+        routingTable.clusterChanged(new ClusterChangedEvent("test", newState, state));
+        assertEquals(0, cache.size());
+        assertEquals("app-baz-write", execute("app-baz-write"));
+    }
+
+    public void testPendingIndexCacheDoesNotOverrideExistingAlias() {
+        resolvedAliasCache = new OpenshiftResolvedAliasCache(Settings.builder()
+                .put(OpenshiftResolvedAliasCache.ENABLED_SETTING.getKey(), false).build());
+        OpenshiftPendingIndexCache cache = new OpenshiftPendingIndexCache(Settings.EMPTY);
+        routingTable = new OpenshiftRoutingTable(cache);
+        routingTable.clusterChanged(new ClusterChangedEvent("test", state, ClusterState.EMPTY_STATE));
+
+        // A stale redirect of an existing write-alias is never used, the cluster state comes first
+        assertEquals("app-foo-000001", cache.getInitialIndex("app-foo-write"));
+        assertEquals("app-foo-write", execute("app-foo-write"));
+        assertEquals(0, cache.getHits());
+    }
+
+    public void testPendingIndexCacheExpiry() {
+        AtomicLong now = new AtomicLong();
+        OpenshiftPendingIndexCache cache = new OpenshiftPendingIndexCache(Settings.builder()
+                .put(OpenshiftPendingIndexCache.EXPIRE_AFTER_SETTING.getKey(), "1m").build(), OpenshiftIndexNaming.DEFAULT, now::get);
+
+        assertEquals("app-foo-000001", cache.getInitialIndex("app-foo-write"));
+        assertEquals("app-foo-000001", cache.lookup("app-foo-write"));
+        now.addAndGet(60000);
+        // The initial index never appeared, the redirect is computed again
+        assertNull(cache.lookup("app-foo-write"));
+        assertEquals("app-foo-000001", cache.getInitialIndex("app-foo-write"));
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.size());
+    }
+
+    public void testPendingIndexCacheEviction() {
+        AtomicLong now = new AtomicLong();
+        OpenshiftPendingIndexCache cache = new OpenshiftPendingIndexCache(Settings.builder()
+                .put(OpenshiftPendingIndexCache.MAX_SIZE_SETTING.getKey(), 3)
+                .put(OpenshiftPendingIndexCache.EXPIRE_AFTER_SETTING.getKey(), "1m").build(), OpenshiftIndexNaming.DEFAULT, now::get);
+
+        cache.getInitialIndex("app-a-write");
+        now.addAndGet(1000);
+        cache.getInitialIndex("app-b-write");
+        cache.getInitialIndex("app-c-write");
+        // Full cache still remembers new write-aliases, the oldest one is evicted
+        cache.getInitialIndex("app-d-write");
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.lookup("app-a-write"));
+        assertEquals("app-d-000001", cache.lookup("app-d-write"));
+
+        // Expired entries are evicted first
+        now.addAndGet(60000);
+        cache.getInitialIndex("app-e-write");
+        assertEquals(1, cache.size());
+        assertEquals(4, cache.getEvictions());
+        assertEquals("app-e-000001", cache.lookup("app-e-write"));
+    }
+
+    public void testCustomDataModelPrefixes() {
+        routingTable.setDataModelPrefixes(Collections.singletonList("tenant-"));
+        assertEquals("tenant-foo-000001", execute("tenant-foo-write"));
+        assertEquals("app-baz-write", execute("app-baz-write"));
+    }
+
+    public void testResolvedAliasCache() {
+        resolvedAliasCache = new OpenshiftResolvedAliasCache(Settings.EMPTY);
+        for (int i = 0; i < 10; i++) {
+            assertEquals("app-baz-000001", execute("app-baz-write"));
+            assertEquals("app-foo-write", execute("app-foo-write"));
+            expectThrows(AliasesNotFoundException.class, () -> execute("app-bar-write"));
+        }
+        assertEquals(27, stats.resolvedCacheHits.sum());
+
+        // Any change of the routing table invalidates the cached results
+        ClusterState newState = ClusterState.builder(state).incrementVersion().metaData(MetaData.builder(state.metaData())
+                .put(createIndexMetaData("app-baz-000001", "app-baz-write"), false)).build();
+        routingTable.clusterChanged(new ClusterChangedEvent("test", newState, state));
+        assertEquals("app-baz-write", execute("app-baz-write"));
+        assertEquals(27, stats.resolvedCacheHits.sum());
+
+        routingTable.setDataModelPrefixes(Collections.singletonList("infra-"));
+        assertEquals("app-foo-write", execute("app-foo-write"));
+        assertEquals("infra-foo-000001", execute("infra-foo-write"));
+        assertEquals(27, stats.resolvedCacheHits.sum());
+    }
+
+    public void testStats() {
+        execute("app-baz-write");
+        execute("app-baz-write");
+        execute("app-foo-write");
+        execute(".kibana");
+        expectThrows(AliasesNotFoundException.class, () -> execute("app-bar-write"));
+
+        assertEquals(2, stats.documentsRedirected.sum());
+        assertEquals(1, stats.documentsPassedThrough.sum());
+        assertEquals(1, stats.documentsSkipped.sum());
+        assertEquals(1, stats.aliasesNotFound.sum());
+        assertEquals(5, stats.executeTime.getCount());
+    }
+
+    /**
+     * Documents are processed by several threads while write-aliases keep appearing in new cluster states.
+     * Every document must be either redirected to the initial index or passed through, every snapshot of the routing
+     * table must be consistent with the cluster state version it reflects and once the last state is applied
+     * all documents must go to the write-aliases.
+     */
+    public void testConcurrentExecute() throws Exception {
+        int schemas = randomIntBetween(10, 100);
+        routingTable = new OpenshiftRoutingTable(randomBoolean() ? new OpenshiftPendingIndexCache(Settings.EMPTY) : null);
+        // Write-aliases of the first (version - 1) schemas exist
+        List<ClusterState> states = new ArrayList<>();
+        for (int k = 0; k <= schemas; k++) {
+            MetaData.Builder mdBuilder = MetaData.builder();
+            for (int i = 0; i < schemas; i++) {
+                mdBuilder.put(i < k ? createIndexMetaData("app-s" + i + "-000001", "app-s" + i + "-write")
+                        : createIndexMetaData("app-s" + i + "-000001"), false);
+            }
+            states.add(ClusterState.builder(ClusterName.DEFAULT).version(k + 1).metaData(mdBuilder).build());
+        }
+        routingTable.clusterChanged(new ClusterChangedEvent("test", states.get(0), ClusterState.EMPTY_STATE));
+
+        AtomicBoolean done = new AtomicBoolean(false);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        int readers = randomIntBetween(2, 8);
+        for (int t = 0; t < readers; t++) {
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    do {
+                        OpenshiftRoutingTable.Snapshot snapshot = routingTable.snapshot();
+                        long aliases = snapshot.getClusterStateVersion() - 1;
+                        int j = randomIntBetween(0, schemas - 1);
+                        assertEquals(j < aliases, snapshot.resolve("app-s" + j + "-write") == OpenshiftRoutingTable.Target.ALIAS);
+                        assertEquals(j >= aliases, snapshot.isMissingWriteAlias("app-s" + j + "-000001"));
+
+                        int i = randomIntBetween(0, schemas - 1);
+                        String index = execute("app-s" + i + "-write");
+                        assertTrue(index, index.equals("app-s" + i + "-write") || index.equals("app-s" + i + "-000001"));
+                    } while (!done.get());
+                    for (int i = 0; i < schemas; i++) {
+                        assertEquals("app-s" + i + "-write", execute("app-s" + i + "-write"));
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        start.countDown();
+        for (int k = 1; k <= schemas; k++) {
+            // Sometimes the table has to be rebuilt as if some change was missed
+            ClusterState previous = rarely() ? ClusterState.EMPTY_STATE : states.get(k - 1);
+            routingTable.clusterChanged(new ClusterChangedEvent("test", states.get(k), previous));
+            if (randomBoolean()) {
+                Thread.yield();
+            }
+        }
+        done.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(schemas + 1, routingTable.getClusterStateVersion());
+        if (routingTable.getPendingIndexCache() != null) {
+            assertEquals(0, routingTable.getPendingIndexCache().size());
+        }
+    }
+
+    private String execute(String index) {
+        OpenshiftIndexProcessor processor = new OpenshiftIndexProcessor(randomAlphaOfLength(5), routingTable, stats, resolvedAliasCache);
+        IngestDocument document = new IngestDocument(index, "_doc", "1", null, null, null, null, new HashMap<>());
+        return processor.execute(document).getFieldValue("_index", String.class);
+    }
+}
@@ -47,6 +47,7 @@ public class OpenshiftIndicesUtilTests extends ESTestCase {
         assertEquals("app-write", generateWriteAliasName("app-000001"));
         assertEquals("foo-write-write", generateWriteAliasName("foo-write-000001"));
         assertEquals("-write", generateWriteAliasName("-000001"));
+        assertEquals("app-write", generateWriteAliasName("app-000002"));
 
         assertEquals("app-write", generateWriteAliasName("   app-000001  "));
     }
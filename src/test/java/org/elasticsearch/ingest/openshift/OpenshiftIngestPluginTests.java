@@ -0,0 +1,130 @@
+/*
+ * Copyright 2021 Lukáš Vlček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsearch.ingest.openshift;
+
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.RamUsageTester;
+import org.elasticsearch.cluster.ClusterStateListener;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.settings.ClusterSettings;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.set.Sets;
+import org.elasticsearch.ingest.Processor;
+import org.elasticsearch.test.ESTestCase;
+import org.elasticsearch.threadpool.TestThreadPool;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class OpenshiftIngestPluginTests extends ESTestCase {
+
+    private ThreadPool threadPool;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        threadPool = new TestThreadPool(getTestName());
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        super.tearDown();
+        terminate(threadPool);
+    }
+
+    /**
+     * Every "ingest.put_pipeline" call makes every node instantiate new processors via the factory.
+     * Doing so must not register any new cluster state listeners, nor should processors hold any state on their own.
+     */
+    public void testPipelineRedefinitionDoesNotAddListeners() throws Exception {
+        OpenshiftIngestPlugin plugin = new OpenshiftIngestPlugin(Settings.EMPTY);
+        CountingClusterService clusterService = new CountingClusterService(threadPool, plugin.getSettings());
+
+        Map<String, Processor.Factory> factories = plugin.getProcessors(
+                new Processor.Parameters(null, null, null, null, null, null, null));
+        Collection<Object> components = plugin.createComponents(null, clusterService, threadPool,
+                null, null, null, null, null, null);
+
+        OpenshiftRoutingTable routingTable = null;
+        for (Object component : components) {
+            if (component instanceof OpenshiftRoutingTable) {
+                assertNull(routingTable);
+                routingTable = (OpenshiftRoutingTable) component;
+            }
+        }
+        assertNotNull(routingTable);
+
+        int listeners = clusterService.listeners;
+        Processor.Factory factory = factories.get(OpenshiftIndexProcessor.TYPE);
+        OpenshiftIndexProcessor first = (OpenshiftIndexProcessor) factory.create(
+                Collections.emptyMap(), "tag", new HashMap<>());
+        assertSame(routingTable, first.getRoutingTable());
+        Set<Object> shared = Collections.newSetFromMap(new IdentityHashMap<>());
+        shared.addAll(Arrays.asList(routingTable, routingTable.getNaming(), first.getStats(), first.getResolvedAliasCache()));
+        for (int i = 0; i < 5000; i++) {
+            OpenshiftIndexProcessor processor = (OpenshiftIndexProcessor) factory.create(
+                    Collections.emptyMap(), "tag" + i, new HashMap<>());
+            assertSame(routingTable, processor.getRoutingTable());
+            assertSame(first.getStats(), processor.getStats());
+            assertSame(first.getResolvedAliasCache(), processor.getResolvedAliasCache());
+            // Apart from the shared components and the configuration there is only the processor itself,
+            // the tester always counts enum constants
+            assertEquals(RamUsageEstimator.shallowSizeOf(processor)
+                    + RamUsageEstimator.shallowSizeOf(processor.getWriteIndexHandling()), sizeOfOwnState(processor, shared));
+        }
+        assertEquals(listeners, clusterService.listeners);
+    }
+
+    private static long sizeOfOwnState(OpenshiftIndexProcessor processor, Set<Object> shared) {
+        return RamUsageTester.sizeOf(processor, new RamUsageTester.Accumulator() {
+            @Override
+            public long accumulateObject(Object o, long shallowSize, Map<Field, Object> fieldValues,
+                                         Collection<Object> queue) {
+                if (shared.contains(o) || o instanceof String) {
+                    return 0;
+                }
+                return super.accumulateObject(o, shallowSize, fieldValues, queue);
+            }
+        });
+    }
+
+    private static class CountingClusterService extends ClusterService {
+
+        private int listeners = 0;
+
+        CountingClusterService(ThreadPool threadPool, List<Setting<?>> pluginSettings) {
+            super(Settings.EMPTY, new ClusterSettings(Settings.EMPTY, Sets.union(ClusterSettings.BUILT_IN_CLUSTER_SETTINGS,
+                    new HashSet<>(pluginSettings))), threadPool, Collections.emptyMap());
+        }
+
+        @Override
+        public void addListener(ClusterStateListener listener) {
+            listeners++;
+            super.addListener(listener);
+        }
+    }
+}
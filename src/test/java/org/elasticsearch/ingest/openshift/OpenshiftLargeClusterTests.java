@@ -0,0 +1,233 @@
+/*
+ * Copyright 2021 Lukáš Vlček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsearch.ingest.openshift;
+
+import org.apache.lucene.util.RamUsageTester;
+import org.elasticsearch.action.Action;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
+import org.elasticsearch.action.support.master.AcknowledgedResponse;
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.ingest.IngestDocument;
+import org.elasticsearch.test.ESTestCase;
+import org.elasticsearch.test.client.NoOpClient;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.elasticsearch.ingest.openshift.OpenshiftIndicesUtil.generateInitialIndexName;
+import static org.elasticsearch.ingest.openshift.OpenshiftIndicesUtil.generateWriteAliasName;
+
+/**
+ * Drives the routing table, the processor and the reconciler through long sequences of changes of a large
+ * simulated cluster, see {@link OpenshiftClusterSimulator}. The size can be raised to simulate the largest
+ * clusters, for example {@code -Dtests.openshift.indices=200000 -Dtests.openshift.events=2000}.
+ *
+ * Time spent applying each change and the memory held by the routing table are logged, they are not asserted.
+ */
+public class OpenshiftLargeClusterTests extends ESTestCase {
+
+    private static final int INDICES = Integer.getInteger("tests.openshift.indices", 10_000);
+    private static final int EVENTS = Integer.getInteger("tests.openshift.events", 100);
+
+    public void testRoutingFollowsClusterChanges() {
+        OpenshiftClusterSimulator simulator = new OpenshiftClusterSimulator(random(), INDICES);
+        OpenshiftStats stats = new OpenshiftStats();
+        OpenshiftRoutingTable routingTable = new OpenshiftRoutingTable();
+        OpenshiftIndexProcessor processor = new OpenshiftIndexProcessor(randomAlphaOfLength(5), routingTable, stats,
+                new OpenshiftResolvedAliasCache(Settings.EMPTY));
+
+        long start = System.nanoTime();
+        routingTable.clusterChanged(new ClusterChangedEvent("test", simulator.state(), ClusterState.EMPTY_STATE));
+        logger.info("Routing table of [{}] indices built in [{}] ms, it holds [{}] bytes", simulator.indexCount(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), sizeOf(routingTable.snapshot()));
+        assertRouting(simulator, routingTable, processor);
+
+        Map<OpenshiftClusterSimulator.Change, List<Long>> times = new HashMap<>();
+        for (int i = 0; i < EVENTS; i++) {
+            OpenshiftRoutingTable.Snapshot previous = routingTable.snapshot();
+            ClusterChangedEvent event = simulator.next();
+            start = System.nanoTime();
+            routingTable.clusterChanged(event);
+            long took = System.nanoTime() - start;
+            times.computeIfAbsent(simulator.lastChange(), c -> new ArrayList<>()).add(took);
+
+            OpenshiftRoutingTable.Snapshot current = routingTable.snapshot();
+            assertEquals(event.state().version(), current.getClusterStateVersion());
+            switch (simulator.lastChange()) {
+                case MAPPING_UPDATE:
+                case CREATE_OTHER_INDEX:
+                    // Nothing routing cares about, the previous data must not be copied
+                    assertTrue(current.sharesRoutingWith(previous));
+                    break;
+                default:
+            }
+            if (i % 5 == 0) {
+                assertRouting(simulator, routingTable, processor);
+            }
+        }
+        assertRouting(simulator, routingTable, processor);
+        assertEquals(new HashSet<>(simulator.expectedInitialIndicesWithoutWriteAlias()),
+                new HashSet<>(routingTable.getInitialIndicesWithoutWriteAlias()));
+
+        for (Map.Entry<OpenshiftClusterSimulator.Change, List<Long>> entry : times.entrySet()) {
+            long[] sorted = entry.getValue().stream().mapToLong(Long::longValue).sorted().toArray();
+            logger.info("[{}] applied [{}] times, p50 [{}] us, p99 [{}] us, max [{}] us", entry.getKey(), sorted.length,
+                    micros(sorted, 0.5), micros(sorted, 0.99), micros(sorted, 1));
+        }
+        logger.info("Routing table of [{}] indices holds [{}] bytes", simulator.indexCount(), sizeOf(routingTable.snapshot()));
+    }
+
+    public void testReconcilerAddsMissingWriteAliases() throws Exception {
+        OpenshiftClusterSimulator simulator = new OpenshiftClusterSimulator(random(), INDICES);
+        OpenshiftStats stats = new OpenshiftStats();
+        OpenshiftRoutingTable routingTable = new OpenshiftRoutingTable();
+        ThreadPool threadPool = new ThreadPool(Settings.builder().put("node.name", getTestName()).build(),
+                OpenshiftWriteAliasReconciler.executorBuilder(Settings.EMPTY));
+        try (AcknowledgingClient client = new AcknowledgingClient(getTestName())) {
+            OpenshiftWriteAliasReconciler reconciler = new OpenshiftWriteAliasReconciler(Settings.EMPTY, routingTable, stats,
+                    client, threadPool, threadPool::relativeTimeInMillis, () -> 0);
+            OpenshiftIngestPlugin.IndicesUpdatedListener listener =
+                    new OpenshiftIngestPlugin(Settings.EMPTY).new IndicesUpdatedListener(reconciler);
+            reconciler.onMaster();
+
+            // The very first state elects the local node, all indices are checked
+            apply(new ClusterChangedEvent("test", simulator.state(), ClusterState.EMPTY_STATE), routingTable, listener,
+                    reconciler);
+            for (int i = 0; i < EVENTS; i++) {
+                apply(simulator.next(), routingTable, listener, reconciler);
+                List<String> indices = client.drain();
+                if (!indices.isEmpty()) {
+                    apply(simulator.addWriteAliases(indices), routingTable, listener, reconciler);
+                }
+            }
+            // Requests are paced, wait for the queue to drain
+            List<String> indices;
+            do {
+                assertBusy(() -> assertEquals(0, reconciler.getPendingCount() + reconciler.getInFlightCount()));
+                indices = client.drain();
+                if (!indices.isEmpty()) {
+                    apply(simulator.addWriteAliases(indices), routingTable, listener, reconciler);
+                }
+            } while (!indices.isEmpty());
+
+            // Initial indices that were rolled over keep the write-alias without the write flag
+            for (String index : simulator.expectedInitialIndicesWithoutWriteAlias()) {
+                assertEquals(index, OpenshiftRoutingTable.Target.ALIAS,
+                        simulator.expectedTarget(generateWriteAliasName(index)));
+            }
+            assertEquals(0, reconciler.getPendingCount());
+            assertEquals(0, reconciler.getInFlightCount());
+            assertEquals(0, stats.aliasesRequestsFailed.sum());
+            logger.info("[{}] index aliases requests with [{}] actions sent", stats.aliasesRequests.sum(),
+                    stats.aliasActions.sum());
+        } finally {
+            terminate(threadPool);
+        }
+    }
+
+    private void apply(ClusterChangedEvent event, OpenshiftRoutingTable routingTable,
+                       OpenshiftIngestPlugin.IndicesUpdatedListener listener,
+                       OpenshiftWriteAliasReconciler reconciler) throws Exception {
+        routingTable.clusterChanged(event);
+        listener.clusterChanged(event);
+        assertBusy(() -> assertEquals(event.state().version(), reconciler.getReconciledVersion()));
+    }
+
+    /**
+     * Compare what the processor does with the full alias and index lookup of the cluster state.
+     */
+    private static void assertRouting(OpenshiftClusterSimulator simulator, OpenshiftRoutingTable routingTable,
+                                      OpenshiftIndexProcessor processor) {
+        for (String writeAlias : simulator.sampleWriteAliases(100)) {
+            OpenshiftRoutingTable.Target expected = simulator.expectedTarget(writeAlias);
+            assertEquals(writeAlias, expected, routingTable.resolve(writeAlias));
+            IngestDocument document = new IngestDocument(writeAlias, "_doc", "1", null, null, null, null, new HashMap<>());
+            String index = processor.execute(document).getFieldValue("_index", String.class);
+            assertEquals(expected == OpenshiftRoutingTable.Target.ALIAS ? writeAlias : generateInitialIndexName(writeAlias),
+                    index);
+        }
+    }
+
+    private static long micros(long[] sorted, double percentile) {
+        int i = (int) Math.ceil(percentile * sorted.length) - 1;
+        return TimeUnit.NANOSECONDS.toMicros(sorted[Math.max(0, i)]);
+    }
+
+    /**
+     * Names and the metadata are shared with the cluster state, only what the routing table adds is counted.
+     */
+    private static long sizeOf(OpenshiftRoutingTable.Snapshot snapshot) {
+        return RamUsageTester.sizeOf(snapshot, new RamUsageTester.Accumulator() {
+            @Override
+            public long accumulateObject(Object o, long shallowSize, Map<Field, Object> fieldValues,
+                                         Collection<Object> queue) {
+                if (o instanceof MetaData || o instanceof String || o instanceof OpenshiftDataModelPrefixes) {
+                    return 0;
+                }
+                return super.accumulateObject(o, shallowSize, fieldValues, queue);
+            }
+        });
+    }
+
+    /**
+     * Acknowledges index aliases requests right away and keeps the indices so that the test can add the aliases.
+     */
+    private static class AcknowledgingClient extends NoOpClient {
+
+        private final ConcurrentLinkedQueue<String> indices = new ConcurrentLinkedQueue<>();
+
+        AcknowledgingClient(String testName) {
+            super(testName);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected <Request extends ActionRequest, Response extends ActionResponse,
+                RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder>>
+        void doExecute(Action<Request, Response, RequestBuilder> action, Request request, ActionListener<Response> listener) {
+            for (IndicesAliasesRequest.AliasActions actions : ((IndicesAliasesRequest) request).getAliasActions()) {
+                indices.addAll(Arrays.asList(actions.indices()));
+            }
+            ((ActionListener<AcknowledgedResponse>) listener).onResponse(new AcknowledgedResponse(true));
+        }
+
+        List<String> drain() {
+            List<String> drained = new ArrayList<>();
+            String index;
+            while ((index = indices.poll()) != null) {
+                drained.add(index);
+            }
+            return drained;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2021 Lukáš Vlček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsearch.ingest.openshift;
+
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.admin.indices.rollover.RolloverRequest;
+import org.elasticsearch.action.admin.indices.rollover.RolloverResponse;
+import org.elasticsearch.action.admin.indices.stats.CommonStats;
+import org.elasticsearch.action.admin.indices.stats.IndicesStatsRequest;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.common.settings.ClusterSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.set.Sets;
+import org.elasticsearch.index.shard.DocsStats;
+import org.elasticsearch.ingest.openshift.OpenshiftClusterSimulator.CapturingClient;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.elasticsearch.ingest.openshift.OpenshiftClusterSimulator.apply;
+import static org.elasticsearch.ingest.openshift.OpenshiftClusterSimulator.createIndexMetaData;
+
+public class OpenshiftRolloverManagerTests extends ESTestCase {
+
+    private final AtomicLong now = new AtomicLong(TimeUnit.DAYS.toMillis(10));
+    private OpenshiftRoutingTable routingTable;
+    private OpenshiftStats stats;
+    private ClusterState state;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        routingTable = new OpenshiftRoutingTable();
+        stats = new OpenshiftStats();
+        state = ClusterState.EMPTY_STATE;
+    }
+
+    public void testConditions() {
+        OpenshiftRolloverManager.Conditions conditions = new OpenshiftRolloverManager.Conditions(
+                TimeValue.timeValueHours(1), 10, new ByteSizeValue(1000));
+        assertTrue(conditions.needStats());
+        assertTrue(conditions.met(TimeValue.timeValueHours(1).millis(), null));
+        assertFalse(conditions.met(0, null));
+        assertFalse(conditions.met(0, primaries(9, 999)));
+        assertTrue(conditions.met(0, primaries(10, 0)));
+        assertTrue(conditions.met(0, primaries(0, 1000)));
+
+        conditions = new OpenshiftRolloverManager.Conditions(TimeValue.timeValueHours(1), -1, new ByteSizeValue(-1));
+        assertFalse(conditions.needStats());
+        assertFalse(conditions.met(0, primaries(Long.MAX_VALUE, Long.MAX_VALUE)));
+    }
+
+    public void testWriteIndexOfRolledOverAlias() {
+        state = apply(routingTable, state, MetaData.builder()
+                .put(createIndexMetaData("app-foo-000001", 0, "app-foo-write", false), false)
+                .put(createIndexMetaData("app-foo-000002", 0, "app-foo-write", true), false)
+                .put(createIndexMetaData("app-bar-000001", 0, "app-bar-write", true), false));
+        OpenshiftRoutingTable.Snapshot snapshot = routingTable.snapshot();
+        assertEquals(new HashSet<>(Arrays.asList("app-foo-write", "app-bar-write")), snapshot.getWriteAliases());
+        assertEquals("app-foo-000002", snapshot.getWriteIndex("app-foo-write").getIndex().getName());
+        assertEquals("app-bar-000001", snapshot.getWriteIndex("app-bar-write").getIndex().getName());
+        assertNull(snapshot.getWriteIndex("app-baz-write"));
+    }
+
+    public void testMaxAgeWithLimitedConcurrency() {
+        MetaData.Builder metaData = MetaData.builder();
+        for (int i = 0; i < 5; i++) {
+            metaData.put(createIndexMetaData("app-old" + i + "-000001", 0, "app-old" + i + "-write", true), false);
+        }
+        metaData.put(createIndexMetaData("app-new-000001", now.get(), "app-new-write", true), false);
+        state = apply(routingTable, state, metaData);
+
+        try (CapturingClient client = new CapturingClient(getTestName())) {
+            OpenshiftRolloverManager manager = createManager(client, Settings.builder()
+                    .put(OpenshiftRolloverManager.ENABLED_SETTING.getKey(), true)
+                    .put(OpenshiftRolloverManager.MAX_AGE_SETTING.getKey(), "1d")
+                    .put(OpenshiftRolloverManager.MAX_CONCURRENT_REQUESTS_SETTING.getKey(), 2)
+                    .build());
+
+            manager.check();
+            assertTrue(manager.isChecking());
+            assertEquals(2, client.requests.size());
+            assertEquals(3, manager.getQueuedCount());
+            assertEquals(2, manager.getInFlightCount());
+            RolloverRequest request = (RolloverRequest) client.requests.get(0);
+            assertNull(request.getNewIndexName());
+            assertEquals(1, request.getConditions().size());
+
+            // Previous check is still running
+            manager.check();
+            assertEquals(2, client.requests.size());
+
+            client.respond(0, rolloverResponse(client.requests.get(0)));
+            assertEquals(3, client.requests.size());
+            for (int i = 1; i < 5; i++) {
+                client.respond(i, rolloverResponse(client.requests.get(i)));
+            }
+            assertEquals(5, client.requests.size());
+            assertFalse(manager.isChecking());
+
+            List<String> aliases = new ArrayList<>();
+            for (ActionRequest r : client.requests) {
+                aliases.add(((RolloverRequest) r).getAlias());
+            }
+            assertFalse(aliases.contains("app-new-write"));
+            assertEquals(1, stats.rolloverChecks.sum());
+            assertEquals(5, stats.rolloverRequests.sum());
+            assertEquals(5, stats.rolledOver.sum());
+        }
+    }
+
+    public void testDocsConditionFetchesStatsOnce() {
+        state = apply(routingTable, state, MetaData.builder()
+                .put(createIndexMetaData("app-a-000001", 0, "app-a-write", true), false)
+                .put(createIndexMetaData("app-b-000001", 0, "app-b-write", true), false));
+
+        try (CapturingClient client = new CapturingClient(getTestName())) {
+            OpenshiftRolloverManager manager = createManager(client, Settings.builder()
+                    .put(OpenshiftRolloverManager.ENABLED_SETTING.getKey(), true)
+                    .put(OpenshiftRolloverManager.MAX_DOCS_SETTING.getKey(), 100)
+                    .build());
+            manager.check();
+            assertEquals(1, client.requests.size());
+            IndicesStatsRequest request = (IndicesStatsRequest) client.requests.get(0);
+            assertEquals(new HashSet<>(Arrays.asList("app-a-000001", "app-b-000001")),
+                    Sets.newHashSet(request.indices()));
+            assertTrue(request.docs());
+        }
+    }
+
+    public void testNothingToDoWithoutConditions() {
+        state = apply(routingTable, state, MetaData.builder().put(createIndexMetaData("app-a-000001", 0, "app-a-write", true), false));
+        try (CapturingClient client = new CapturingClient(getTestName())) {
+            OpenshiftRolloverManager manager = createManager(client, Settings.builder()
+                    .put(OpenshiftRolloverManager.ENABLED_SETTING.getKey(), true)
+                    .build());
+            manager.check();
+            assertEquals(0, client.requests.size());
+            assertEquals(0, stats.rolloverChecks.sum());
+        }
+    }
+
+    private OpenshiftRolloverManager createManager(CapturingClient client, Settings settings) {
+        ClusterSettings clusterSettings = new ClusterSettings(settings, Sets.union(ClusterSettings.BUILT_IN_CLUSTER_SETTINGS,
+                new HashSet<>(new OpenshiftIngestPlugin(Settings.EMPTY).getSettings())));
+        return new OpenshiftRolloverManager(settings, clusterSettings, routingTable, stats, client, null, now::get);
+    }
+
+    private static CommonStats primaries(long count, long size) {
+        CommonStats stats = new CommonStats();
+        stats.docs = new DocsStats(count, 0, size);
+        return stats;
+    }
+
+    private static RolloverResponse rolloverResponse(ActionRequest request) {
+        String alias = ((RolloverRequest) request).getAlias();
+        return new RolloverResponse(alias, alias, Collections.emptyMap(), false, true, true, true);
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2021 Lukáš Vlček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsearch.ingest.openshift;
+
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.AliasOrIndex;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.elasticsearch.ingest.openshift.OpenshiftClusterSimulator.createIndexMetaData;
+import static org.elasticsearch.ingest.openshift.OpenshiftIndicesUtil.generateWriteAliasName;
+import static org.elasticsearch.ingest.openshift.OpenshiftIndicesUtil.getInitialIndicesWithoutWriteAlias;
+
+public class OpenshiftRoutingTableTests extends ESTestCase {
+
+    public void testResolve() {
+        OpenshiftRoutingTable table = new OpenshiftRoutingTable();
+        ClusterState state = clusterState(1, MetaData.builder()
+                .put(createIndexMetaData("app-foo-000001", "app-foo-write"), false)
+                .put(createIndexMetaData("app-bar-write"), false)
+                .put(createIndexMetaData(".kibana", ".kibana-write"), false)
+                .put(createIndexMetaData("infra-baz-000001"), false));
+        table.clusterChanged(new ClusterChangedEvent("test", state, ClusterState.EMPTY_STATE));
+
+        assertEquals(OpenshiftRoutingTable.Target.ALIAS, table.resolve("app-foo-write"));
+        assertEquals(OpenshiftRoutingTable.Target.INDEX, table.resolve("app-bar-write"));
+        assertEquals(OpenshiftRoutingTable.Target.NONE, table.resolve("infra-baz-write"));
+        // Not part of the data model
+        assertEquals(OpenshiftRoutingTable.Target.NONE, table.resolve(".kibana-write"));
+
+        assertEquals(1, table.getInitialIndicesWithoutWriteAlias().size());
+        assertEquals("infra-baz-000001", table.getInitialIndicesWithoutWriteAlias().get(0));
+        assertEquals(1, table.getClusterStateVersion());
+    }
+
+    public void testChangeDataModelPrefixes() {
+        OpenshiftRoutingTable table = new OpenshiftRoutingTable();
+        List<String> missing = new ArrayList<>();
+        table.setMissingWriteAliasConsumer(missing::add);
+        ClusterState state = clusterState(1, MetaData.builder()
+                .put(createIndexMetaData("app-foo-000001", "app-foo-write"), false)
+                .put(createIndexMetaData("tenant-bar-000001"), false)
+                .put(createIndexMetaData("tenant-baz-000001", "tenant-baz-write"), false));
+        table.clusterChanged(new ClusterChangedEvent("test", state, ClusterState.EMPTY_STATE));
+        assertEquals(OpenshiftRoutingTable.Target.NONE, table.resolve("tenant-baz-write"));
+        assertTrue(missing.isEmpty());
+
+        table.setDataModelPrefixes(Arrays.asList("tenant-", "infra-"));
+        assertTrue(table.hasDataModelPrefix("tenant-bar-write"));
+        assertFalse(table.hasDataModelPrefix("app-foo-write"));
+        assertEquals(OpenshiftRoutingTable.Target.ALIAS, table.resolve("tenant-baz-write"));
+        assertEquals(OpenshiftRoutingTable.Target.NONE, table.resolve("app-foo-write"));
+        assertEquals(Collections.singletonList("tenant-bar-000001"), missing);
+        assertEquals(Collections.singletonList("tenant-bar-000001"), table.getInitialIndicesWithoutWriteAlias());
+    }
+
+    /**
+     * Apply random sequence of metadata changes and verify the incrementally updated table gives
+     * the same answers as the full alias and index lookup of the cluster.
+     */
+    public void testIncrementalUpdatesMatchFullLookup() {
+        OpenshiftRoutingTable table = new OpenshiftRoutingTable();
+        ClusterState previous = ClusterState.EMPTY_STATE;
+        List<String> schemas = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            schemas.add(randomFrom("app-", "infra-", "audit-", ".") + "schema" + i);
+        }
+
+        for (int version = 1; version <= 200; version++) {
+            MetaData.Builder mdBuilder = MetaData.builder(previous.metaData());
+            String schema = randomFrom(schemas);
+            String initialIndex = schema + "-000001";
+            String writeAlias = generateWriteAliasName(initialIndex);
+            // Alias and index of the same name can not coexist
+            boolean writeNameTaken = previous.metaData().getAliasAndIndexLookup().containsKey(writeAlias);
+            switch (randomIntBetween(0, 3)) {
+                case 0:
+                    mdBuilder.put(createIndexMetaData(initialIndex), true);
+                    break;
+                case 1:
+                    if (previous.metaData().hasIndex(writeAlias)) {
+                        mdBuilder.remove(writeAlias);
+                    }
+                    mdBuilder.put(createIndexMetaData(initialIndex, writeAlias), true);
+                    break;
+                case 2:
+                    mdBuilder.remove(initialIndex);
+                    break;
+                default:
+                    if (previous.metaData().hasIndex(writeAlias)) {
+                        mdBuilder.remove(writeAlias);
+                    } else if (!writeNameTaken) {
+                        mdBuilder.put(createIndexMetaData(writeAlias), true);
+                    }
+            }
+            ClusterState current = clusterState(version, mdBuilder);
+            table.clusterChanged(new ClusterChangedEvent("test", current, previous));
+
+            Map<String, AliasOrIndex> lookup = current.metaData().getAliasAndIndexLookup();
+            for (String s : schemas) {
+                String name = s + "-write";
+                OpenshiftRoutingTable.Target expected = OpenshiftRoutingTable.Target.NONE;
+                if (OpenshiftIndicesUtil.hasDataModelPrefix(s) && lookup.containsKey(name)) {
+                    expected = lookup.get(name).isAlias()
+                            ? OpenshiftRoutingTable.Target.ALIAS : OpenshiftRoutingTable.Target.INDEX;
+                }
+                assertEquals(expected, table.resolve(name));
+            }
+            assertEquals(new HashSet<>(getInitialIndicesWithoutWriteAlias(lookup)),
+                    new HashSet<>(table.getInitialIndicesWithoutWriteAlias()));
+            previous = current;
+        }
+    }
+
+    private static ClusterState clusterState(long version, MetaData.Builder metaData) {
+        return ClusterState.builder(ClusterName.DEFAULT).version(version).metaData(metaData).build();
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2021 Lukáš Vlček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsearch.ingest.openshift;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class OpenshiftStatsActionTests extends ESTestCase {
+
+    public void testHistogramBuckets() {
+        OpenshiftStats.Histogram histogram = new OpenshiftStats.Histogram();
+        histogram.record(100);           // < 1us
+        histogram.record(1_500);         // [1us, 2us)
+        histogram.record(3_000);         // [2us, 4us)
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(4, histogram.getCount());
+        assertEquals(1, histogram.getBucket(0));
+        assertEquals(1, histogram.getBucket(1));
+        assertEquals(1, histogram.getBucket(2));
+        assertEquals(1, histogram.getBucket(OpenshiftStats.Histogram.BUCKETS - 1));
+        assertEquals(4, ((List<?>) histogram.toMap().get("buckets")).size());
+    }
+
+    public void testSerialization() throws Exception {
+        OpenshiftStats stats = new OpenshiftStats();
+        stats.documentsRedirected.add(3);
+        stats.executeTime.record(randomIntBetween(0, 1_000_000));
+        stats.aliasesRequests.increment();
+
+        DiscoveryNode node = new DiscoveryNode("node_0", buildNewFakeTransportAddress(), Version.CURRENT);
+        OpenshiftStatsAction.Response response = new OpenshiftStatsAction.Response(ClusterName.DEFAULT,
+                Collections.singletonList(new OpenshiftStatsAction.NodeResponse(node, 42, Long.MIN_VALUE,
+                        stats.processorStats(), Collections.singletonMap("enabled", false), stats.reconcilerStats(),
+                        stats.rolloverStats())),
+                Collections.emptyList());
+
+        BytesStreamOutput out = new BytesStreamOutput();
+        response.writeTo(out);
+        OpenshiftStatsAction.Response read = new OpenshiftStatsAction.Response();
+        try (StreamInput in = out.bytes().streamInput()) {
+            read.readFrom(in);
+        }
+
+        assertEquals(1, read.getNodes().size());
+        OpenshiftStatsAction.NodeResponse nodeResponse = read.getNodes().get(0);
+        assertEquals(42, nodeResponse.getClusterStateVersion());
+        assertEquals(-1, nodeResponse.getReconciledClusterStateVersion());
+        assertEquals(3L, nodeResponse.getProcessor().get("redirected"));
+        assertEquals(1L, ((Map<?, ?>) nodeResponse.getProcessor().get("execute_time")).get("count"));
+        assertEquals(1L, nodeResponse.getReconciler().get("requests"));
+        assertEquals(0L, nodeResponse.getRollover().get("rolled_over"));
+
+        XContentBuilder builder = JsonXContent.contentBuilder().startObject();
+        read.toXContent(builder, ToXContent.EMPTY_PARAMS);
+        String json = Strings.toString(builder.endObject());
+        assertTrue(json, json.contains("\"node_0\":{\"name\":\"\",\"cluster_state_version\":42,"));
+    }
+}
@@ -0,0 +1,578 @@
+/*
+ * Copyright 2021 Lukáš Vlček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsearch.ingest.openshift;
+
+import org.elasticsearch.ElasticsearchSecurityException;
+import org.elasticsearch.Version;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
+import org.elasticsearch.action.support.master.AcknowledgedResponse;
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.block.ClusterBlockException;
+import org.elasticsearch.cluster.coordination.DeterministicTaskQueue;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.cluster.metadata.ProcessClusterEventTimeoutException;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.discovery.MasterNotDiscoveredException;
+import org.elasticsearch.index.IndexNotFoundException;
+import org.elasticsearch.ingest.openshift.OpenshiftClusterSimulator.CapturingClient;
+import org.elasticsearch.node.Node;
+import org.elasticsearch.node.NodeClosedException;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.test.ESTestCase;
+import org.elasticsearch.threadpool.TestThreadPool;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.RemoteTransportException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.elasticsearch.ingest.openshift.OpenshiftClusterSimulator.apply;
+import static org.elasticsearch.ingest.openshift.OpenshiftClusterSimulator.createIndexMetaData;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class OpenshiftWriteAliasReconcilerTests extends ESTestCase {
+
+    private final AtomicLong now = new AtomicLong();
+    private OpenshiftRoutingTable routingTable;
+    private OpenshiftWriteAliasReconciler reconciler;
+    private OpenshiftStats stats;
+    private ClusterState state;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        routingTable = new OpenshiftRoutingTable();
+        stats = new OpenshiftStats();
+        reconciler = new OpenshiftWriteAliasReconciler(Settings.builder()
+                .put(OpenshiftWriteAliasReconciler.FULL_SWEEP_INTERVAL_SETTING.getKey(), "1m")
+                .put(OpenshiftWriteAliasReconciler.MAX_PENDING_SETTING.getKey(), 2)
+                .build(), routingTable, stats, null, null, now::get, () -> 0);
+        // As if the local node was the master, see OpenshiftWriteAliasReconciler#onMaster
+        routingTable.setMissingWriteAliasConsumer(index -> reconciler.enqueue(index));
+        state = ClusterState.EMPTY_STATE;
+    }
+
+    public void testOnlyChangedIndicesAreCollected() {
+        state = apply(routingTable, state, MetaData.builder()
+                .put(createIndexMetaData("app-foo-000001"), false)
+                .put(createIndexMetaData("app-bar-000001", "app-bar-write"), false));
+        // The very first change
+        assertEquals(Collections.singletonList("app-foo-000001"), reconciler.collect(false));
+
+        // Unrelated change, the app-foo-000001 is still missing the write-alias but it was not changed
+        state = apply(routingTable, state, MetaData.builder(state.metaData()).put(createIndexMetaData(".kibana"), false));
+        assertEquals(Collections.emptyList(), reconciler.collect(false));
+
+        state = apply(routingTable, state, MetaData.builder(state.metaData()).put(createIndexMetaData("app-baz-000001"), false));
+        assertEquals(Collections.singletonList("app-baz-000001"), reconciler.collect(false));
+
+        // Full sweep finds all of them
+        assertEquals(new HashSet<>(Arrays.asList("app-foo-000001", "app-baz-000001")),
+                new HashSet<>(reconciler.collect(true)));
+    }
+
+    public void testOnlyMasterCollectsChangedIndices() {
+        DeterministicTaskQueue taskQueue = new DeterministicTaskQueue(
+                Settings.builder().put(Node.NODE_NAME_SETTING.getKey(), getTestName()).build(), random());
+        reconciler = new OpenshiftWriteAliasReconciler(Settings.EMPTY, routingTable, stats, null,
+                taskQueue.getThreadPool(), taskQueue::getCurrentTimeMillis, () -> 0);
+        reconciler.offMaster();
+        state = apply(routingTable, state, MetaData.builder().put(createIndexMetaData("app-foo-000001"), false));
+        assertEquals(0, reconciler.getPendingCount());
+
+        reconciler.onMaster();
+        state = apply(routingTable, state, MetaData.builder(state.metaData()).put(createIndexMetaData("app-bar-000001"), false));
+        assertEquals(Collections.singletonList("app-bar-000001"), reconciler.collect(false));
+
+        reconciler.offMaster();
+        state = apply(routingTable, state, MetaData.builder(state.metaData()).put(createIndexMetaData("app-baz-000001"), false));
+        assertEquals(0, reconciler.getPendingCount());
+    }
+
+    public void testSelfHealingBackoff() {
+        try (CapturingClient client = new CapturingClient(getTestName())) {
+            reconciler = new OpenshiftWriteAliasReconciler(Settings.builder()
+                    .put(OpenshiftWriteAliasReconciler.FULL_SWEEP_INTERVAL_SETTING.getKey(), "1m")
+                    .put(OpenshiftWriteAliasReconciler.FULL_SWEEP_MAX_INTERVAL_SETTING.getKey(), "3m")
+                    .build(), routingTable, stats, client, null, now::get, () -> 0);
+
+            // Nothing to do, the delay grows up to the max interval
+            reconciler.selfHeal();
+            assertEquals(120_000, reconciler.getSelfHealingDelayMillis());
+            now.addAndGet(60_000);
+            reconciler.selfHeal();
+            assertEquals(120_000, reconciler.getSelfHealingDelayMillis());
+            now.addAndGet(60_000);
+            reconciler.selfHeal();
+            assertEquals(180_000, reconciler.getSelfHealingDelayMillis());
+
+            // The index was not reported to the reconciler, as if it was created before master failover
+            state = apply(routingTable, state, MetaData.builder().put(createIndexMetaData("app-foo-000001"), false));
+            reconciler.clear();
+            now.addAndGet(180_000);
+            reconciler.selfHeal();
+            assertEquals(1, client.requests.size());
+            assertEquals(60_000, reconciler.getSelfHealingDelayMillis());
+        }
+    }
+
+    public void testSelfHealingSurvivesRejection() {
+        CapturingThreadPool threadPool = new CapturingThreadPool(getTestName());
+        try (CapturingClient client = new CapturingClient(getTestName())) {
+            reconciler = new OpenshiftWriteAliasReconciler(Settings.builder()
+                    .put(OpenshiftWriteAliasReconciler.FULL_SWEEP_INTERVAL_SETTING.getKey(), "1m")
+                    .build(), routingTable, stats, client, threadPool, now::get, () -> 0);
+            state = apply(routingTable, state, MetaData.builder().put(createIndexMetaData("app-a-000001"), false));
+            // Only the full sweep finds the index
+            reconciler.collect(false);
+            reconciler.onMaster();
+            // Periodic tasks that are rejected are not scheduled again, the tick runs on the generic pool
+            assertEquals(ThreadPool.Names.GENERIC, threadPool.periodicExecutor);
+
+            now.addAndGet(60_000);
+            threadPool.rejecting = true;
+            threadPool.periodic.run();
+            assertEquals(0, client.requests.size());
+
+            threadPool.rejecting = false;
+            threadPool.periodic.run();
+            assertEquals(1, client.requests.size());
+            reconciler.offMaster();
+        } finally {
+            terminate(threadPool);
+        }
+    }
+
+    public void testFullSweepAfterOverflow() {
+        state = apply(routingTable, state, MetaData.builder()
+                .put(createIndexMetaData("app-a-000001"), false)
+                .put(createIndexMetaData("app-b-000001"), false)
+                .put(createIndexMetaData("app-c-000001"), false));
+        assertEquals(3, reconciler.collect(false).size());
+    }
+
+    public void testIndicesThatGotWriteAliasAreSkipped() {
+        state = apply(routingTable, state, MetaData.builder().put(createIndexMetaData("app-foo-000001"), false));
+        reconciler.enqueue("app-foo-000001");
+        state = apply(routingTable, state, MetaData.builder().put(createIndexMetaData("app-foo-000001", "app-foo-write"), false));
+        assertEquals(Collections.emptyList(), reconciler.collect(false));
+    }
+
+    public void testSingleFlight() {
+        try (CapturingClient client = new CapturingClient(getTestName())) {
+            reconciler = new OpenshiftWriteAliasReconciler(Settings.EMPTY, routingTable, stats, client, null, now::get, () -> 0);
+
+            state = apply(routingTable, state, MetaData.builder().put(createIndexMetaData("app-a-000001"), false));
+            reconciler.reconcile(false);
+            assertEquals(1, client.requests.size());
+            assertTrue(reconciler.isInFlight("app-a-000001"));
+
+            // The request was not acknowledged yet, new indices are merged into the next batch.
+            state = apply(routingTable, state, MetaData.builder(state.metaData()).put(createIndexMetaData("app-b-000001"), false));
+            reconciler.reconcile(false);
+            state = apply(routingTable, state, MetaData.builder(state.metaData()).put(createIndexMetaData("app-c-000001"), false));
+            reconciler.reconcile(true);
+            assertEquals(1, client.requests.size());
+
+            // Past the pacing delay, the next batch is sent right away
+            now.addAndGet(1000);
+            client.respond(0, new AcknowledgedResponse(true));
+            assertFalse(reconciler.isInFlight("app-a-000001"));
+            assertEquals(2, client.requests.size());
+            IndicesAliasesRequest iar = (IndicesAliasesRequest) client.requests.get(1);
+            assertEquals(2, iar.getAliasActions().size());
+            assertEquals(new HashSet<>(Arrays.asList("app-b-000001", "app-c-000001")), new HashSet<>(Arrays.asList(
+                    iar.getAliasActions().get(0).indices()[0], iar.getAliasActions().get(1).indices()[0])));
+
+            client.respond(1, new AcknowledgedResponse(true));
+            assertEquals(2, client.requests.size());
+
+            assertEquals(2, stats.aliasesRequests.sum());
+            assertEquals(2, stats.aliasesRequestsAcknowledged.sum());
+            assertEquals(3, stats.aliasActions.sum());
+            assertEquals(2, stats.aliasesRequestTime.getCount());
+        }
+    }
+
+    public void testRequestsArePaced() {
+        DeterministicTaskQueue taskQueue = new DeterministicTaskQueue(
+                Settings.builder().put(Node.NODE_NAME_SETTING.getKey(), getTestName()).build(), random());
+        AtomicInteger masterPendingTasks = new AtomicInteger();
+        try (CapturingClient client = new CapturingClient(getTestName())) {
+            reconciler = new OpenshiftWriteAliasReconciler(Settings.builder()
+                    .put(OpenshiftWriteAliasReconciler.MAX_ACTIONS_PER_REQUEST_SETTING.getKey(), 2)
+                    .put(OpenshiftWriteAliasReconciler.MAX_REQUESTS_PER_SECOND_SETTING.getKey(), 2)
+                    .put(OpenshiftWriteAliasReconciler.PENDING_TASKS_THRESHOLD_SETTING.getKey(), 10)
+                    .build(), routingTable, stats, client, taskQueue.getThreadPool(), taskQueue::getCurrentTimeMillis,
+                    masterPendingTasks::get);
+
+            MetaData.Builder metaData = MetaData.builder();
+            for (int i = 0; i < 5; i++) {
+                metaData.put(createIndexMetaData("app-" + i + "-000001"), false);
+            }
+            state = apply(routingTable, state, metaData);
+            long start = taskQueue.getCurrentTimeMillis();
+            reconciler.reconcile(false);
+            assertEquals(1, client.requests.size());
+            assertEquals(2, ((IndicesAliasesRequest) client.requests.get(0)).getAliasActions().size());
+            assertEquals(3, reconciler.getQueuedCount());
+
+            // Acknowledged right away, the next request waits
+            client.respond(0, new AcknowledgedResponse(true));
+            assertEquals(1, client.requests.size());
+            assertEquals(1, stats.aliasesRequestsDelayed.sum());
+
+            // The master got busy, the delay after the next request grows
+            masterPendingTasks.set(40);
+            taskQueue.advanceTime();
+            taskQueue.runAllRunnableTasks();
+            assertEquals(start + 500, taskQueue.getCurrentTimeMillis());
+            assertEquals(2, client.requests.size());
+            assertEquals(2000, reconciler.getPacingDelayMillis());
+
+            client.respond(1, new AcknowledgedResponse(true));
+            taskQueue.advanceTime();
+            taskQueue.runAllRunnableTasks();
+            assertEquals(start + 2500, taskQueue.getCurrentTimeMillis());
+            assertEquals(3, client.requests.size());
+            assertEquals(1, ((IndicesAliasesRequest) client.requests.get(2)).getAliasActions().size());
+            assertEquals(0, reconciler.getQueuedCount());
+
+            // No matter how busy the master is, the delay is capped
+            masterPendingTasks.set(Integer.MAX_VALUE);
+            assertEquals(OpenshiftWriteAliasReconciler.MAX_PACING_DELAY_MILLIS, reconciler.getPacingDelayMillis());
+        }
+    }
+
+    public void testRejectedDelayedRequestDoesNotStopSending() {
+        CapturingThreadPool threadPool = new CapturingThreadPool(getTestName());
+        try (CapturingClient client = new CapturingClient(getTestName())) {
+            reconciler = new OpenshiftWriteAliasReconciler(Settings.builder()
+                    .put(OpenshiftWriteAliasReconciler.MAX_ACTIONS_PER_REQUEST_SETTING.getKey(), 1)
+                    .build(), routingTable, stats, client, threadPool, now::get, () -> 0);
+            state = apply(routingTable, state, MetaData.builder()
+                    .put(createIndexMetaData("app-a-000001"), false)
+                    .put(createIndexMetaData("app-b-000001"), false));
+            reconciler.reconcile(false);
+            client.respond(0, new AcknowledgedResponse(true));
+            // The second request waits for the pacing delay, the executor rejects it when the delay elapses
+            assertEquals(1, client.requests.size());
+            threadPool.reject(0);
+            assertEquals(1, client.requests.size());
+
+            now.addAndGet(1000);
+            reconciler.reconcile(false);
+            assertEquals(2, client.requests.size());
+        } finally {
+            terminate(threadPool);
+        }
+    }
+
+    public void testFailureClassification() {
+        assertEquals(OpenshiftWriteAliasReconciler.Failure.BENIGN,
+                OpenshiftWriteAliasReconciler.Failure.classify(new IndexNotFoundException("app-a-000001")));
+        assertEquals(OpenshiftWriteAliasReconciler.Failure.BENIGN, OpenshiftWriteAliasReconciler.Failure.classify(
+                new IllegalArgumentException("alias [app-a-write] has more than one write index [app-a-000001,app-a-000002]")));
+        assertEquals(OpenshiftWriteAliasReconciler.Failure.RETRYABLE, OpenshiftWriteAliasReconciler.Failure.classify(
+                new RemoteTransportException("test", new ProcessClusterEventTimeoutException(TimeValue.timeValueSeconds(30), "test"))));
+        assertEquals(OpenshiftWriteAliasReconciler.Failure.RETRYABLE,
+                OpenshiftWriteAliasReconciler.Failure.classify(new MasterNotDiscoveredException("test")));
+        assertEquals(OpenshiftWriteAliasReconciler.Failure.FATAL, OpenshiftWriteAliasReconciler.Failure.classify(
+                new ElasticsearchSecurityException("action [indices:admin/aliases] is unauthorized", RestStatus.FORBIDDEN)));
+        assertEquals(OpenshiftWriteAliasReconciler.Failure.FATAL, OpenshiftWriteAliasReconciler.Failure.classify(
+                new ClusterBlockException(Collections.singleton(MetaData.CLUSTER_READ_ONLY_BLOCK))));
+    }
+
+    public void testRetryDelay() {
+        reconciler = new OpenshiftWriteAliasReconciler(Settings.builder()
+                .put(OpenshiftWriteAliasReconciler.RETRY_INITIAL_DELAY_SETTING.getKey(), "1s")
+                .put(OpenshiftWriteAliasReconciler.RETRY_MAX_DELAY_SETTING.getKey(), "1m")
+                .build(), routingTable, stats, null, null, now::get, () -> 0);
+        assertEquals(500, reconciler.getRetryDelayMillis(1, 0));
+        assertEquals(1999, reconciler.getRetryDelayMillis(2, 0.999));
+        assertEquals(30_000, reconciler.getRetryDelayMillis(7, 0));
+        assertEquals(30_000, reconciler.getRetryDelayMillis(100, 0));
+        assertEquals(60_000, reconciler.getRetryDelayMillis(100, 1));
+    }
+
+    public void testFailedActionIsDroppedAndOthersAreResent() {
+        try (CapturingClient client = new CapturingClient(getTestName())) {
+            reconciler = new OpenshiftWriteAliasReconciler(Settings.EMPTY, routingTable, stats, client, null, now::get, () -> 0);
+            state = apply(routingTable, state, MetaData.builder()
+                    .put(createIndexMetaData("app-a-000001"), false)
+                    .put(createIndexMetaData("app-b-000001"), false)
+                    .put(createIndexMetaData("app-c-000001"), false));
+            reconciler.reconcile(false);
+            assertEquals(1, client.requests.size());
+
+            // The index was deleted before the request was processed
+            now.addAndGet(1000);
+            client.fail(0, new IndexNotFoundException("app-b-000001"));
+            assertEquals(2, client.requests.size());
+            IndicesAliasesRequest iar = (IndicesAliasesRequest) client.requests.get(1);
+            // Order of the indices depends on the iteration order of the metadata
+            assertEquals(2, iar.getAliasActions().size());
+            assertEquals(new HashSet<>(Arrays.asList("app-a-000001", "app-c-000001")), new HashSet<>(Arrays.asList(
+                    iar.getAliasActions().get(0).indices()[0], iar.getAliasActions().get(1).indices()[0])));
+            assertEquals(1, stats.aliasFailuresBenign.sum());
+            assertEquals(0, reconciler.getBackingOffCount());
+        }
+    }
+
+    public void testRetryableFailureBacksOff() {
+        DeterministicTaskQueue taskQueue = new DeterministicTaskQueue(
+                Settings.builder().put(Node.NODE_NAME_SETTING.getKey(), getTestName()).build(), random());
+        try (CapturingClient client = new CapturingClient(getTestName())) {
+            reconciler = new OpenshiftWriteAliasReconciler(Settings.EMPTY, routingTable, stats, client,
+                    taskQueue.getThreadPool(), taskQueue::getCurrentTimeMillis, () -> 0);
+            state = apply(routingTable, state, MetaData.builder()
+                    .put(createIndexMetaData("app-a-000001"), false)
+                    .put(createIndexMetaData("app-b-000001"), false));
+            long start = taskQueue.getCurrentTimeMillis();
+            reconciler.reconcile(false);
+            client.fail(0, new MasterNotDiscoveredException("test"));
+            assertEquals(2, reconciler.getBackingOffCount());
+            assertEquals(1, stats.aliasFailuresRetryable.sum());
+
+            // Changes that come in the meantime do not bypass the backoff
+            state = apply(routingTable, state, MetaData.builder(state.metaData()).put(createIndexMetaData("app-c-000001"), false));
+            reconciler.reconcile(true);
+            taskQueue.advanceTime();
+            taskQueue.runAllRunnableTasks();
+            assertEquals(2, client.requests.size());
+            assertEquals(1, ((IndicesAliasesRequest) client.requests.get(1)).getAliasActions().size());
+            client.respond(1, new AcknowledgedResponse(true));
+
+            taskQueue.advanceTime();
+            taskQueue.runAllRunnableTasks();
+            long delay = taskQueue.getCurrentTimeMillis() - start;
+            assertThat(delay, allOf(greaterThanOrEqualTo(500L), lessThanOrEqualTo(1000L)));
+            assertEquals(3, client.requests.size());
+            assertEquals(2, ((IndicesAliasesRequest) client.requests.get(2)).getAliasActions().size());
+            assertEquals(0, reconciler.getBackingOffCount());
+
+            // The second consecutive failure waits twice as long
+            start = taskQueue.getCurrentTimeMillis();
+            client.fail(2, new NodeClosedException(new DiscoveryNode("node_0", buildNewFakeTransportAddress(), Version.CURRENT)));
+            taskQueue.advanceTime();
+            taskQueue.runAllRunnableTasks();
+            delay = taskQueue.getCurrentTimeMillis() - start;
+            assertThat(delay, allOf(greaterThanOrEqualTo(1000L), lessThanOrEqualTo(2000L)));
+            assertEquals(4, client.requests.size());
+        }
+    }
+
+    public void testRejectedRetryDoesNotKeepBackingOff() {
+        CapturingThreadPool threadPool = new CapturingThreadPool(getTestName());
+        try (CapturingClient client = new CapturingClient(getTestName())) {
+            reconciler = new OpenshiftWriteAliasReconciler(Settings.EMPTY, routingTable, stats, client, threadPool,
+                    now::get, () -> 0);
+            state = apply(routingTable, state, MetaData.builder().put(createIndexMetaData("app-a-000001"), false));
+            reconciler.reconcile(false);
+            client.fail(0, new MasterNotDiscoveredException("test"));
+            assertEquals(OpenshiftWriteAliasReconciler.IndexStatus.BACKING_OFF, reconciler.getStatus("app-a-000001"));
+
+            // The executor rejects the retry when the delay elapses
+            threadPool.reject(0);
+            assertEquals(1, client.requests.size());
+            assertEquals(0, reconciler.getBackingOffCount());
+
+            // The next full sweep requests the index again
+            now.addAndGet(1000);
+            reconciler.reconcile(true);
+            assertEquals(2, client.requests.size());
+            assertArrayEquals(new String[]{"app-a-000001"},
+                    ((IndicesAliasesRequest) client.requests.get(1)).getAliasActions().get(0).indices());
+        } finally {
+            terminate(threadPool);
+        }
+    }
+
+    public void testFatalFailureIsNotRetried() {
+        try (CapturingClient client = new CapturingClient(getTestName())) {
+            reconciler = new OpenshiftWriteAliasReconciler(Settings.EMPTY, routingTable, stats, client, null, now::get, () -> 0);
+            state = apply(routingTable, state, MetaData.builder().put(createIndexMetaData("app-a-000001"), false));
+            reconciler.reconcile(false);
+            now.addAndGet(1000);
+            client.fail(0, new ElasticsearchSecurityException("action [indices:admin/aliases] is unauthorized",
+                    RestStatus.FORBIDDEN));
+            assertEquals(1, client.requests.size());
+            assertEquals(0, reconciler.getBackingOffCount());
+            assertEquals(0, reconciler.getPendingCount());
+            assertEquals(1, stats.aliasFailuresFatal.sum());
+            assertThat(reconciler.getLastFatalFailure(), containsString("unauthorized"));
+
+            // Found again by the self-healing sweep
+            reconciler.reconcile(true);
+            assertEquals(2, client.requests.size());
+        }
+    }
+
+    public void testElectionWithoutMetaDataChangeRunsFullSweep() {
+        DeterministicTaskQueue taskQueue = new DeterministicTaskQueue(
+                Settings.builder().put(Node.NODE_NAME_SETTING.getKey(), getTestName()).build(), random());
+        try (CapturingClient client = new CapturingClient(getTestName())) {
+            reconciler = new OpenshiftWriteAliasReconciler(Settings.EMPTY, routingTable, stats, client,
+                    taskQueue.getThreadPool(), taskQueue::getCurrentTimeMillis, () -> 0);
+            OpenshiftIngestPlugin.IndicesUpdatedListener listener =
+                    new OpenshiftIngestPlugin(Settings.EMPTY).new IndicesUpdatedListener(reconciler);
+            DiscoveryNode node = new DiscoveryNode("node_0", buildNewFakeTransportAddress(), Version.CURRENT);
+
+            // The index is created while other node is the master
+            ClusterState follower = ClusterState.builder(ClusterName.DEFAULT).version(1)
+                    .nodes(DiscoveryNodes.builder().add(node).localNodeId(node.getId()))
+                    .metaData(MetaData.builder().put(createIndexMetaData("app-a-000001"), false)).build();
+            ClusterChangedEvent event = new ClusterChangedEvent("test", follower, ClusterState.EMPTY_STATE);
+            routingTable.clusterChanged(event);
+            listener.clusterChanged(event);
+            taskQueue.runAllRunnableTasks();
+            assertEquals(0, client.requests.size());
+
+            // The local node is elected, the metadata is the same instance
+            ClusterState master = ClusterState.builder(follower).incrementVersion()
+                    .nodes(DiscoveryNodes.builder(follower.nodes()).masterNodeId(node.getId())).build();
+            event = new ClusterChangedEvent("test", master, follower);
+            assertFalse(event.metaDataChanged());
+            routingTable.clusterChanged(event);
+            listener.clusterChanged(event);
+            taskQueue.runAllRunnableTasks();
+            assertEquals(master.version(), reconciler.getReconciledVersion());
+            assertEquals(1, client.requests.size());
+            IndicesAliasesRequest request = (IndicesAliasesRequest) client.requests.get(0);
+            assertEquals(1, request.getAliasActions().size());
+            assertArrayEquals(new String[]{"app-a-000001"}, request.getAliasActions().get(0).indices());
+        }
+    }
+
+    public void testScheduledOnExecutor() throws Exception {
+        ThreadPool threadPool = new ThreadPool(Settings.builder().put("node.name", getTestName()).build(),
+                OpenshiftWriteAliasReconciler.executorBuilder(Settings.EMPTY));
+        try (CapturingClient client = new CapturingClient(getTestName())) {
+            reconciler = new OpenshiftWriteAliasReconciler(Settings.EMPTY, routingTable, stats, client, threadPool, now::get, () -> 0);
+            state = apply(routingTable, state, MetaData.builder().put(createIndexMetaData("app-a-000001"), false));
+            for (int i = 0; i < 100; i++) {
+                reconciler.schedule(state.version(), false);
+            }
+            assertBusy(() -> assertEquals(state.version(), reconciler.getReconciledVersion()));
+            assertEquals(1, client.requests.size());
+        } finally {
+            terminate(threadPool);
+        }
+    }
+
+    /**
+     * Keeps the scheduled tasks and lets the test decide whether they run or are rejected by the executor.
+     */
+    private static class CapturingThreadPool extends TestThreadPool {
+
+        private final List<Runnable> scheduled = new ArrayList<>();
+        private Runnable periodic;
+        private String periodicExecutor;
+        // Tasks submitted to the plugin's executor run right away unless they are rejected
+        private boolean rejecting = false;
+
+        CapturingThreadPool(String name) {
+            super(name);
+        }
+
+        @Override
+        public ScheduledCancellable schedule(Runnable command, TimeValue delay, String executor) {
+            scheduled.add(command);
+            return null;
+        }
+
+        @Override
+        public Cancellable scheduleWithFixedDelay(Runnable command, TimeValue interval, String executor) {
+            periodic = command;
+            periodicExecutor = executor;
+            return new Cancellable() {
+                @Override
+                public boolean cancel() {
+                    return true;
+                }
+
+                @Override
+                public boolean isCancelled() {
+                    return false;
+                }
+            };
+        }
+
+        @Override
+        public ExecutorService executor(String name) {
+            if (OpenshiftWriteAliasReconciler.EXECUTOR.equals(name) == false) {
+                return super.executor(name);
+            }
+            return new AbstractExecutorService() {
+                @Override
+                public void execute(Runnable command) {
+                    if (rejecting) {
+                        ((AbstractRunnable) command).onRejection(new EsRejectedExecutionException("test", false));
+                    } else {
+                        command.run();
+                    }
+                }
+
+                @Override
+                public void shutdown() {
+                }
+
+                @Override
+                public List<Runnable> shutdownNow() {
+                    return Collections.emptyList();
+                }
+
+                @Override
+                public boolean isShutdown() {
+                    return false;
+                }
+
+                @Override
+                public boolean isTerminated() {
+                    return false;
+                }
+
+                @Override
+                public boolean awaitTermination(long timeout, TimeUnit unit) {
+                    return true;
+                }
+            };
+        }
+
+        void reject(int task) {
+            ((AbstractRunnable) scheduled.get(task)).onRejection(new EsRejectedExecutionException("test", false));
+        }
+    }
+}